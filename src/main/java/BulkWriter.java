@@ -0,0 +1,198 @@
+package main.java;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.CodecRegistry;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the rows of one table through {@link Session#executeAsync(Statement)},
+ * keeping at most a fixed number of writes in flight.
+ * A caller blocks in {@link #insert(Object...)} once all permits are taken, which gives
+ * backpressure against a slow cluster instead of queueing unbounded futures in memory.
+ * The first failed write aborts the load: it is rethrown by the next insert or by {@link #close()}.
+ *
+ * With a batch size above 1, consecutive rows inserted by the same thread that share a partition key
+ * are grouped into one UNLOGGED batch, so a partition is written with a single request.
+ * Rows of different partitions are never mixed into one batch.
+ */
+class BulkWriter implements TableWriter {
+    private final Session session;
+    private final String table;
+    private final PreparedStatement insertStmt;
+    private final ProtocolVersion protocolVersion;
+    private final CodecRegistry codecRegistry;
+    private final int maxInFlight;
+    private final int batchSize;
+    private final ThreadLocal<PendingBatch> pendingBatch = ThreadLocal.withInitial(this::newPendingBatch);
+    private final Queue<PendingBatch> pendingBatches = new ConcurrentLinkedQueue<>();
+    private final Semaphore inFlight;
+    private final AtomicLong rowCount = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * @param maxInFlight : maximum number of requests in flight
+     * @param batchSize : maximum number of rows grouped into one single-partition batch, 1 to disable batching
+     */
+    BulkWriter(Session session, String table, String insertCmd, int maxInFlight, int batchSize) {
+        this.session = session;
+        this.table = table;
+        this.insertStmt = session.prepare(insertCmd);
+        Configuration configuration = session.getCluster().getConfiguration();
+        this.protocolVersion = configuration.getProtocolOptions().getProtocolVersion();
+        this.codecRegistry = configuration.getCodecRegistry();
+        this.maxInFlight = maxInFlight;
+        this.batchSize = Math.max(1, batchSize);
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    // rows of one partition waiting to be sent together, owned by a single inserting thread
+    private static class PendingBatch {
+        private ByteBuffer partitionKey;
+        private BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+    }
+
+    /**
+     * Insert one row. Null values are left unset so no tombstones are written.
+     * @param values : column values in the order of the insert statement
+     */
+    @Override
+    public void insert(Object... values) {
+        BoundStatement bound = insertStmt.bind(values);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                bound.unset(i);
+            }
+        }
+        write(bound);
+    }
+
+    /**
+     * Insert one row of values already serialized in the column types,
+     * as returned by {@link com.datastax.driver.core.Row#getBytesUnsafe(int)}. Null values are left unset.
+     * @param values : serialized column values in the order of the insert statement
+     */
+    void insertSerialized(ByteBuffer... values) {
+        BoundStatement bound = insertStmt.bind();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                bound.setBytesUnsafe(i, values[i]);
+            }
+        }
+        write(bound);
+    }
+
+    private void write(BoundStatement bound) {
+        if (batchSize == 1) {
+            execute(bound, 1);
+            return;
+        }
+
+        ByteBuffer partitionKey = bound.getRoutingKey(protocolVersion, codecRegistry);
+        PendingBatch pending = pendingBatch.get();
+        if (pending.batch.size() > 0 && (partitionKey == null || !partitionKey.equals(pending.partitionKey))) {
+            flush(pending);
+        }
+        pending.partitionKey = partitionKey;
+        pending.batch.add(bound);
+        if (pending.batch.size() >= batchSize || partitionKey == null) {
+            flush(pending);
+        }
+    }
+
+    private PendingBatch newPendingBatch() {
+        PendingBatch pending = new PendingBatch();
+        pendingBatches.add(pending);
+        return pending;
+    }
+
+    private void flush(PendingBatch pending) {
+        BatchStatement batch = pending.batch;
+        pending.batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        if (batch.size() == 1) {
+            execute(batch.getStatements().iterator().next(), 1);
+        } else if (batch.size() > 1) {
+            execute(batch, batch.size());
+        }
+    }
+
+    /**
+     * Send a statement that writes the given number of rows.
+     */
+    void execute(Statement statement, final int rows) {
+        checkFailure();
+        inFlight.acquireUninterruptibly();
+        ResultSetFuture future = session.executeAsync(statement);
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+                rowCount.addAndGet(rows);
+                inFlight.release();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failure.compareAndSet(null, t);
+                inFlight.release();
+            }
+        });
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount.get();
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * Send all partially filled batches and wait for all in-flight writes.
+     */
+    @Override
+    public void flush() {
+        for (PendingBatch pending : pendingBatches) {
+            flush(pending);
+        }
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+        checkFailure();
+    }
+
+    /**
+     * Flush, then report the load rate of this table.
+     * Must only be called after all inserting threads are done.
+     */
+    @Override
+    public void close() {
+        flush();
+
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.printf("Successfully loaded %d rows for table : %s (%.0f rows/sec) \n",
+                rowCount.get(), table, rowCount.get() / seconds);
+    }
+
+    private void checkFailure() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new IllegalStateException("Write to table " + table + " failed with error : " + t.getMessage(), t);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package main.java;
+
+/**
+ * Packs a (W_ID, D_ID, C_ID) triple into one long.
+ * Ordering of packed keys follows ordering of the triples as long as
+ * W_ID < 2^23, D_ID < 2^16 and C_ID < 2^24, ids beyond these bounds are rejected as their keys would collide.
+ */
+final class CompositeKey {
+    private static final int MAX_W_ID = (1 << 23) - 1;
+    private static final int MAX_D_ID = (1 << 16) - 1;
+    private static final int MAX_C_ID = (1 << 24) - 1;
+
+    private CompositeKey() {}
+
+    static long pack(int wId, int dId, int cId) {
+        if (wId < 0 || wId > MAX_W_ID || dId < 0 || dId > MAX_D_ID || cId < 0 || cId > MAX_C_ID) {
+            throw new IllegalArgumentException("Customer key out of range: W_ID " + wId + ", D_ID " + dId
+                    + ", C_ID " + cId);
+        }
+        return ((long) wId << 40) | ((long) dId << 24) | cId;
+    }
+}
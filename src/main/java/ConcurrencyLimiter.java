@@ -0,0 +1,132 @@
+package main.java;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Caps the requests in flight to one node, adapting the cap to the latency the node shows (Vegas style).
+ * The shortest round trip seen estimates the latency without queueing, so limit * (1 - minRtt / rtt) estimates
+ * the requests queued at the node:
+ * - few queued requests (below alpha), the limit grows, the node keeps up
+ * - many queued requests (above beta), the limit shrinks, the node is queueing
+ * - a timeout or an overloaded node cuts the limit by BACKOFF_RATIO.
+ * Requests over the limit wait in a queue and are handed to the dispatcher as soon as a request completes,
+ * so no thread blocks and no waiting request is sent from the driver thread completing another one.
+ */
+class ConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+    // the shortest round trip is measured again every PROBE_SAMPLES samples, in case the node got faster or slower
+    private static final int PROBE_SAMPLES = 1000;
+    private static final int MIN_LIMIT = 1;
+
+    private final String name;
+    private final int maxLimit;
+    private final Executor dispatcher;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long minRtt = Long.MAX_VALUE;
+    private int samples;
+    private long queuedCount;
+    private long droppedCount;
+    private long maxWaiting;
+
+    /**
+     * @param dispatcher : runs the waiting requests once the limit allows them
+     */
+    ConcurrencyLimiter(String name, int initialLimit, int maxLimit, Executor dispatcher) {
+        this.name = name;
+        this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, maxLimit));
+        this.maxLimit = maxLimit;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Run the request now if the limit allows it, otherwise once enough requests complete.
+     * The request must call {@link #release(long, boolean)} exactly once when it completes,
+     * unless it throws, then its slot is released by the limiter.
+     */
+    void submit(Runnable request) {
+        synchronized (this) {
+            if (inFlight >= (int) limit) {
+                waiting.add(request);
+                queuedCount++;
+                maxWaiting = Math.max(maxWaiting, waiting.size());
+                return;
+            }
+            inFlight++;
+        }
+        start(request);
+    }
+
+    /**
+     * @param rttNanos : round trip of the completed request
+     * @param dropped : whether the request timed out or the node was overloaded
+     */
+    void release(long rttNanos, boolean dropped) {
+        synchronized (this) {
+            inFlight--;
+            updateLimit(rttNanos, dropped);
+        }
+        dispatchWaiting();
+    }
+
+    // hand as many waiting requests to the dispatcher as the limit now allows
+    private void dispatchWaiting() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (waiting.isEmpty() || inFlight >= (int) limit) {
+                    return;
+                }
+                next = waiting.poll();
+                inFlight++;
+            }
+            dispatcher.execute(() -> start(next));
+        }
+    }
+
+    private void start(Runnable request) {
+        try {
+            request.run();
+        } catch (RuntimeException | Error e) {
+            // the request was not sent and never releases its slot
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatchWaiting();
+            throw e;
+        }
+    }
+
+    private void updateLimit(long rttNanos, boolean dropped) {
+        if (dropped) {
+            droppedCount++;
+            limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+            return;
+        }
+        if (++samples >= PROBE_SAMPLES) {
+            samples = 0;
+            minRtt = rttNanos;
+        }
+        minRtt = Math.max(1, Math.min(minRtt, rttNanos));
+
+        double log = Math.max(1, Math.log10(limit));
+        double queueSize = limit * (1 - (double) minRtt / rttNanos);
+        if (queueSize < 3 * log) {
+            // only grow while the limit is used, an idle node says nothing about how much more it takes
+            if (inFlight + 1 >= (int) limit / 2) {
+                limit = Math.min(maxLimit, limit + log);
+            }
+        } else if (queueSize > 6 * log) {
+            limit = Math.max(MIN_LIMIT, limit - log);
+        }
+    }
+
+    synchronized String getMetrics() {
+        return String.format("%s : limit %d, in flight %d, queued %d (at most %d at once), dropped %d",
+                name, (int) limit, inFlight, queuedCount, maxWaiting, droppedCount);
+    }
+}
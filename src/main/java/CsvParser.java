@@ -0,0 +1,165 @@
+package main.java;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parser for the bootstrap .csv files in data folder.
+ * The file is memory mapped and split into newline-aligned chunks which are parsed on
+ * several threads at once. Rows are handed to a {@link RowHandler} as a {@link CsvRow}
+ * cursor over the mapped bytes, so no line String or String[] is created per row.
+ * Rows within one chunk keep file order, but chunks are processed in no particular order.
+ * Chunks are parsed in waves of one chunk per thread; once a wave is done, a {@link ProgressListener}
+ * learns the file offset up to which every row has been handled.
+ */
+class CsvParser {
+    static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+
+    private final int parallelism;
+    private final int chunkSize;
+
+    CsvParser(int parallelism) {
+        this(parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    CsvParser(int parallelism, int chunkSize) {
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Callback invoked for every row. It is called from several threads at once,
+     * hence implementations must be thread-safe.
+     */
+    interface RowHandler {
+        void handle(CsvRow row);
+    }
+
+    /**
+     * Callback invoked on the parsing thread between waves, while no row is being handled.
+     */
+    interface ProgressListener {
+        /**
+         * @param offset : every row before this file offset has been handled
+         */
+        void onProgress(long offset);
+    }
+
+    /**
+     * Parse the whole file and wait until every row has been handled.
+     * The first exception thrown by the handler aborts parsing and is rethrown.
+     */
+    void parse(String path, RowHandler handler) throws IOException {
+        parse(path, 0, handler, offset -> { });
+    }
+
+    /**
+     * Parse the file from the given offset, which must be the start of a line,
+     * e.g. an offset previously reported to a {@link ProgressListener}.
+     */
+    void parse(String path, long startOffset, RowHandler handler, ProgressListener listener) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+            List<long[]> chunks = split(channel, startOffset);
+
+            if (parallelism == 1 || chunks.size() == 1) {
+                for (long[] chunk : chunks) {
+                    parseChunk(channel, chunk[0], chunk[1], handler);
+                    listener.onProgress(chunk[1]);
+                }
+                return;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()));
+            try {
+                for (int wave = 0; wave < chunks.size(); wave += parallelism) {
+                    List<long[]> waveChunks = chunks.subList(wave, Math.min(chunks.size(), wave + parallelism));
+                    List<Future<Void>> futures = new ArrayList<>();
+                    for (long[] chunk : waveChunks) {
+                        futures.add(executor.submit(() -> {
+                            parseChunk(channel, chunk[0], chunk[1], handler);
+                            return null;
+                        }));
+                    }
+                    for (Future<Void> future : futures) {
+                        future.get();
+                    }
+                    listener.onProgress(waveChunks.get(waveChunks.size() - 1)[1]);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Parsing " + path + " interrupted.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("Parsing " + path + " failed with error : " + cause.getMessage(), cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    // find chunk boundaries so that every chunk ends right after a newline
+    private List<long[]> split(FileChannel channel, long startOffset) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = startOffset;
+
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            chunks.add(new long[] {start, Math.min(end, size)});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private void parseChunk(FileChannel channel, long start, long end, RowHandler handler) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        CsvRow row = new CsvRow(buffer);
+        int limit = buffer.limit();
+        int lineStart = 0;
+
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                if (row.reset(lineStart, i)) {
+                    handler.handle(row);
+                }
+                lineStart = i + 1;
+            }
+        }
+        // last line without trailing newline
+        if (lineStart < limit && row.reset(lineStart, limit)) {
+            handler.handle(row);
+        }
+    }
+}
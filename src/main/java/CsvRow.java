@@ -0,0 +1,180 @@
+package main.java;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Cursor over one comma separated line of a byte buffer.
+ * Only field offsets are recorded when the cursor moves to a new line,
+ * fields are converted to typed values on demand straight from the bytes.
+ * A cursor is reused for every line of a chunk and must not be shared between threads.
+ */
+class CsvRow {
+    private static final String NULL_VALUE = "null";
+
+    private final ByteBuffer buffer;
+    private int[] fieldStart = new int[32];
+    private int[] fieldEnd = new int[32];
+    private int fieldCount;
+    private byte[] scratch = new byte[256];
+
+    CsvRow(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Move the cursor to the line between the given buffer positions (end exclusive).
+     * @return false if the line is blank
+     */
+    boolean reset(int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        if (end <= start) {
+            return false;
+        }
+
+        fieldCount = 0;
+        int fieldBegin = start;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == ',') {
+                addField(fieldBegin, i);
+                fieldBegin = i + 1;
+            }
+        }
+        addField(fieldBegin, end);
+        return true;
+    }
+
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    boolean isNull(int i) {
+        int length = fieldEnd[i] - fieldStart[i];
+        if (length != NULL_VALUE.length()) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            if (buffer.get(fieldStart[i] + j) != NULL_VALUE.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getInt(int i) {
+        long value = getLong(i);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Value out of int range: " + getString(i));
+        }
+        return (int) value;
+    }
+
+    long getLong(int i) {
+        int pos = fieldStart[i];
+        int end = fieldEnd[i];
+        boolean negative = false;
+        if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+        if (pos == end || end - pos > 18) {
+            // leave unusual values to the JDK, which also produces the error message
+            return Long.parseLong(getString(i));
+        }
+
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = buffer.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(i) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    BigDecimal getDecimal(int i) {
+        int pos = fieldStart[i];
+        int end = fieldEnd[i];
+        boolean negative = false;
+        if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; pos < end; pos++) {
+            byte b = buffer.get(pos);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digits < 18) {
+                unscaled = unscaled * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                // exponent, too many digits or malformed input
+                return new BigDecimal(getString(i));
+            }
+        }
+        if (digits == 0) {
+            return new BigDecimal(getString(i));
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    float getFloat(int i) {
+        return Float.parseFloat(getString(i));
+    }
+
+    /**
+     * @return timestamp in "yyyy-MM-dd HH:mm:ss.SSS" format, or null for a "null" field
+     */
+    Date getTimestamp(int i) {
+        if (isNull(i)) {
+            return null;
+        }
+        return new Date(TimestampParser.parseMillis(buffer, fieldStart[i], fieldEnd[i]));
+    }
+
+    String getString(int i) {
+        int length = fieldEnd[i] - fieldStart[i];
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int j = 0; j < length; j++) {
+            scratch[j] = buffer.get(fieldStart[i] + j);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return copy of the raw bytes of the current line
+     */
+    byte[] getLineBytes() {
+        int start = fieldStart[0];
+        byte[] line = new byte[fieldEnd[fieldCount - 1] - start];
+        for (int j = 0; j < line.length; j++) {
+            line[j] = buffer.get(start + j);
+        }
+        return line;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+}
@@ -0,0 +1,349 @@
+package main.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the bootstrap data files loaded by {@link Setup} for any number of warehouses,
+ * in exactly the column order Setup parses them, following the TPC-C cardinalities:
+ * 10 districts per warehouse, 3000 customers and 3000 orders per district,
+ * 5 to 15 order lines per order, 100k items, and one stock row per warehouse and item.
+ * Orders above {@link #FIRST_UNDELIVERED_ORDER} - 1 are not yet delivered.
+ *
+ * Warehouses are generated in parallel, each into its own part files, which are concatenated in warehouse order.
+ * Every warehouse draws from a random generator seeded by the run seed and its own id,
+ * so the output is identical for the same seed regardless of the number of threads.
+ *
+ * Usage: main.java.DataGenerator <number of warehouses> [seed] [output folder]
+ */
+class DataGenerator {
+    private static final int DISTRICTS_PER_WAREHOUSE = 10;
+    private static final int CUSTOMERS_PER_DISTRICT = 3000;
+    private static final int ORDERS_PER_DISTRICT = 3000;
+    private static final int FIRST_UNDELIVERED_ORDER = 2101;
+    private static final int ITEM_COUNT = 100000;
+    private static final long DEFAULT_SEED = 4224;
+    private static final String DEFAULT_OUTPUT_DIR = "data";
+    // all timestamps are relative to a fixed load time, so the output does not depend on when it is generated
+    private static final long LOAD_TIME = 1501545600000L; // 2017-08-01 00:00:00 UTC
+    private static final String[] LAST_NAME_SYLLABLES = {
+            "BAR", "OUGHT", "ABLE", "PRI", "PRES", "ESE", "ANTI", "CALLY", "ATION", "EING"};
+    private static final String[] WAREHOUSE_FILES = {
+            "warehouse.csv", "district.csv", "customer.csv", "order.csv", "order-line.csv", "stock.csv"};
+
+    private final int warehouseCount;
+    private final long seed;
+    private final File outputDir;
+    // run-time constant of the NURand function used for customer last names
+    private final int lastNameConstant;
+
+    private DataGenerator(int warehouseCount, long seed, File outputDir) {
+        this.warehouseCount = warehouseCount;
+        this.seed = seed;
+        this.outputDir = outputDir;
+        this.lastNameConstant = new SplittableRandom(seed).nextInt(256);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: main.java.DataGenerator <number of warehouses> [seed] [output folder]");
+            System.exit(1);
+        }
+        int warehouseCount = Integer.parseInt(args[0]);
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_SEED;
+        File outputDir = new File((args.length > 2) ? args[2] : DEFAULT_OUTPUT_DIR);
+
+        try {
+            new DataGenerator(warehouseCount, seed, outputDir).run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private void run() {
+        if (warehouseCount <= 0) {
+            throw new IllegalArgumentException("Number of warehouses must be positive.");
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Create folder " + outputDir + " failed.");
+        }
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            File partDir = Files.createTempDirectory(outputDir.toPath(), "parts").toFile();
+            List<Future<?>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> {
+                generateItems(new File(outputDir, "item.csv"));
+                return null;
+            }));
+            for (int w = 1; w <= warehouseCount; w++) {
+                final int warehouseId = w;
+                futures.add(executor.submit(() -> {
+                    generateWarehouse(warehouseId, partDir);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            for (String fileName : WAREHOUSE_FILES) {
+                concatenateParts(fileName, partDir);
+            }
+            if (!partDir.delete()) {
+                System.out.println("Unable to delete folder " + partDir);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Generate data failed with error : " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generate data failed with error : " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generate data interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("Successfully generated data of %d warehouses into %s (%.1f sec) \n",
+                warehouseCount, outputDir, (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    private void generateItems(File file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder sb = new StringBuilder();
+        try (Writer out = newWriter(file)) {
+            for (int i = 1; i <= ITEM_COUNT; i++) {
+                sb.setLength(0);
+                sb.append(i).append(',');
+                appendString(sb, random, 14, 24).append(',');
+                appendDecimal(sb, random.nextInt(100, 10001), 2).append(',');
+                sb.append(random.nextInt(1, 10001)).append(',');
+                appendData(sb, random).append('\n');
+                out.append(sb);
+            }
+        }
+    }
+
+    private void generateWarehouse(int w, File partDir) throws IOException {
+        // distinct stream per warehouse, independent of the order warehouses are generated in
+        SplittableRandom random = new SplittableRandom(seed * 31 + w);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        // formatted in UTC rather than the default time zone, so the output is the same on every machine
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder sb = new StringBuilder();
+
+        try (Writer out = newWriter(partFile(partDir, "warehouse.csv", w))) {
+            sb.setLength(0);
+            sb.append(w).append(',');
+            appendString(sb, random, 6, 10).append(',');
+            appendAddress(sb, random).append(',');
+            appendDecimal(sb, random.nextInt(0, 2001), 4).append(',');
+            appendDecimal(sb, 30000000L * DISTRICTS_PER_WAREHOUSE, 2).append('\n');
+            out.append(sb);
+        }
+
+        try (Writer out = newWriter(partFile(partDir, "district.csv", w))) {
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                sb.setLength(0);
+                sb.append(w).append(',').append(d).append(',');
+                appendString(sb, random, 6, 10).append(',');
+                appendAddress(sb, random).append(',');
+                appendDecimal(sb, random.nextInt(0, 2001), 4).append(',');
+                appendDecimal(sb, 3000000L, 2).append(',');
+                sb.append(ORDERS_PER_DISTRICT + 1).append('\n');
+                out.append(sb);
+            }
+        }
+
+        try (Writer out = newWriter(partFile(partDir, "customer.csv", w))) {
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                for (int c = 1; c <= CUSTOMERS_PER_DISTRICT; c++) {
+                    sb.setLength(0);
+                    sb.append(w).append(',').append(d).append(',').append(c).append(',');
+                    appendString(sb, random, 8, 16).append(",OE,");
+                    appendLastName(sb, (c <= 1000) ? c - 1 : nonUniformRandom(random, 255, 0, 999)).append(',');
+                    appendAddress(sb, random).append(',');
+                    appendDigits(sb, random, 16).append(',');
+                    sb.append(dateFormat.format(new Date(LOAD_TIME))).append(',');
+                    sb.append((random.nextInt(10) == 0) ? "BC" : "GC").append(',');
+                    appendDecimal(sb, 5000000L, 2).append(',');
+                    appendDecimal(sb, random.nextInt(0, 5001), 4).append(',');
+                    appendDecimal(sb, -1000L, 2).append(',');
+                    sb.append("10.0,1,0,");
+                    appendString(sb, random, 300, 500).append('\n');
+                    out.append(sb);
+                }
+            }
+        }
+
+        try (Writer orderOut = newWriter(partFile(partDir, "order.csv", w));
+             Writer orderLineOut = newWriter(partFile(partDir, "order-line.csv", w))) {
+            for (int d = 1; d <= DISTRICTS_PER_WAREHOUSE; d++) {
+                int[] customerIds = shuffledIds(random, CUSTOMERS_PER_DISTRICT);
+                for (int o = 1; o <= ORDERS_PER_DISTRICT; o++) {
+                    boolean delivered = o < FIRST_UNDELIVERED_ORDER;
+                    int orderLineCount = random.nextInt(5, 16);
+                    // orders are entered one second apart, in order id sequence
+                    String entryDate = dateFormat.format(new Date(LOAD_TIME + (o - 1) * 1000L));
+
+                    sb.setLength(0);
+                    sb.append(w).append(',').append(d).append(',').append(o).append(',')
+                            .append(customerIds[o - 1]).append(',');
+                    if (delivered) {
+                        sb.append(random.nextInt(1, 11));
+                    } else {
+                        sb.append("null");
+                    }
+                    sb.append(',').append(orderLineCount).append(",1,").append(entryDate).append('\n');
+                    orderOut.append(sb);
+
+                    for (int ol = 1; ol <= orderLineCount; ol++) {
+                        sb.setLength(0);
+                        sb.append(w).append(',').append(d).append(',').append(o).append(',').append(ol).append(',');
+                        sb.append(random.nextInt(1, ITEM_COUNT + 1)).append(',');
+                        sb.append(delivered ? entryDate : "null").append(',');
+                        appendDecimal(sb, delivered ? 0 : random.nextInt(1, 1000000), 2).append(',');
+                        sb.append(w).append(",5,");
+                        appendString(sb, random, 24, 24).append('\n');
+                        orderLineOut.append(sb);
+                    }
+                }
+            }
+        }
+
+        try (Writer out = newWriter(partFile(partDir, "stock.csv", w))) {
+            for (int i = 1; i <= ITEM_COUNT; i++) {
+                sb.setLength(0);
+                sb.append(w).append(',').append(i).append(',');
+                sb.append(random.nextInt(10, 101)).append(",0,0,0,");
+                for (int dist = 1; dist <= DISTRICTS_PER_WAREHOUSE; dist++) {
+                    appendString(sb, random, 24, 24).append(',');
+                }
+                appendData(sb, random).append('\n');
+                out.append(sb);
+            }
+        }
+    }
+
+    private void concatenateParts(String fileName, File partDir) throws IOException {
+        try (FileChannel out = new FileOutputStream(new File(outputDir, fileName)).getChannel()) {
+            for (int w = 1; w <= warehouseCount; w++) {
+                File part = partFile(partDir, fileName, w);
+                try (FileChannel in = new FileInputStream(part).getChannel()) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+                Files.delete(part.toPath());
+            }
+        }
+    }
+
+    private static File partFile(File partDir, String fileName, int warehouseId) {
+        return new File(partDir, fileName + "." + warehouseId);
+    }
+
+    private static Writer newWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    private int nonUniformRandom(SplittableRandom random, int a, int x, int y) {
+        return (((random.nextInt(0, a + 1) | random.nextInt(x, y + 1)) + lastNameConstant) % (y - x + 1)) + x;
+    }
+
+    private static int[] shuffledIds(SplittableRandom random, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        return ids;
+    }
+
+    private static StringBuilder appendLastName(StringBuilder sb, int number) {
+        return sb.append(LAST_NAME_SYLLABLES[number / 100])
+                .append(LAST_NAME_SYLLABLES[number / 10 % 10])
+                .append(LAST_NAME_SYLLABLES[number % 10]);
+    }
+
+    // street 1, street 2, city, state and zip
+    private static StringBuilder appendAddress(StringBuilder sb, SplittableRandom random) {
+        appendString(sb, random, 10, 20).append(',');
+        appendString(sb, random, 10, 20).append(',');
+        appendString(sb, random, 10, 20).append(',');
+        appendString(sb, random, 2, 2).append(',');
+        return appendDigits(sb, random, 4).append("11111");
+    }
+
+    // item and stock data, 10% of which contain "ORIGINAL"
+    private static StringBuilder appendData(StringBuilder sb, SplittableRandom random) {
+        int length = random.nextInt(26, 51);
+        if (random.nextInt(10) != 0) {
+            return appendString(sb, random, length, length);
+        }
+        int prefix = random.nextInt(length - 8 + 1);
+        appendString(sb, random, prefix, prefix).append("ORIGINAL");
+        return appendString(sb, random, length - 8 - prefix, length - 8 - prefix);
+    }
+
+    private static StringBuilder appendString(StringBuilder sb, SplittableRandom random, int minLength, int maxLength) {
+        int length = random.nextInt(minLength, maxLength + 1);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb;
+    }
+
+    private static StringBuilder appendDigits(StringBuilder sb, SplittableRandom random, int length) {
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('0' + random.nextInt(10)));
+        }
+        return sb;
+    }
+
+    private static StringBuilder appendDecimal(StringBuilder sb, long unscaled, int scale) {
+        if (unscaled < 0) {
+            sb.append('-');
+            unscaled = -unscaled;
+        }
+        long unit = 1;
+        for (int i = 0; i < scale; i++) {
+            unit *= 10;
+        }
+        sb.append(unscaled / unit).append('.');
+        String fraction = String.valueOf(unscaled % unit);
+        for (int i = fraction.length(); i < scale; i++) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
@@ -1,66 +1,59 @@
 package main.java;
 
-import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
 import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import main.java.StatementRegistry.Query;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class DeliveryTransaction {
-    private PreparedStatement selectSmallestOrderStmt;
-    private PreparedStatement selectOrderLinesStmt;
-    private PreparedStatement selectCustomerStmt;
-    private PreparedStatement updateOrderByIdStmt;
-    private PreparedStatement updateOrderByTimestampStmt;
-    private PreparedStatement updateOrderLineStmt;
-    private PreparedStatement updateCustomerByDeliveryStmt;
-    private Row targetCustomer;
-    private Row targetOrder;
-    private Session session;
-
-    private static final String SELECT_SMALLEST_ORDER =
+    // callbacks only issue requests, run them on the driver thread completing the request
+    private static final Executor DIRECT = MoreExecutors.directExecutor();
+
+    private final StatementRegistry statements;
+
+    static final String SELECT_SMALLEST_ORDER =
             "SELECT o_id, o_c_id, o_entry_d "
                     + "FROM orders_by_id "
                     + "WHERE o_w_id = ? AND o_d_id = ? AND o_carrier_id = -1 LIMIT 1 ALLOW FILTERING;";
-    private static final String SELECT_ORDER_LINES =
+    static final String SELECT_ORDER_LINES =
             "SELECT ol_number, ol_amount "
                     + "FROM order_lines "
                     + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ?;";
-    private static final String SELECT_CUSTOMER =
+    static final String SELECT_CUSTOMER =
             "SELECT c_balance, c_delivery_cnt "
                     + "FROM customers "
                     + "WHERE c_w_id = ? AND c_d_id = ? AND c_id = ?;";
-    private static final String UPDATE_CUSTOMER_BY_DELIVERY =
+    static final String UPDATE_CUSTOMER_BY_DELIVERY =
             "UPDATE customers "
                     + "SET c_balance = ?, c_delivery_cnt = ?, c_carrier_id = ?"
                     + "WHERE c_w_id = ? AND c_d_id = ? AND c_id = ?;";
-    private static final String UPDATE_ORDER_LINE =
+    static final String UPDATE_ORDER_LINE =
             "UPDATE order_lines "
                     + "SET ol_delivery_d = ? "
                     + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ? AND ol_number = ?;";
-    private static final String UPDATE_ORDER_BY_ID =
+    static final String UPDATE_ORDER_BY_ID =
             "UPDATE orders_by_id "
                     + "SET o_carrier_id = ? "
                     + "WHERE o_w_id = ? AND o_d_id = ? AND o_id = ? AND o_c_id = ?;";
-    private static final String UPDATE_ORDER_BY_TIMESTAMP =
+    static final String UPDATE_ORDER_BY_TIMESTAMP =
             "UPDATE orders_by_timestamp "
                     + "SET o_carrier_id = ? "
                     + "WHERE o_w_id = ? AND o_d_id = ? AND o_entry_d = ? AND o_id = ? AND o_c_id = ?;";
 
-    DeliveryTransaction(Session session) {
-        this.session = session;
-        this.selectSmallestOrderStmt = session.prepare(SELECT_SMALLEST_ORDER);
-        this.selectOrderLinesStmt = session.prepare(SELECT_ORDER_LINES);
-        this.selectCustomerStmt = session.prepare(SELECT_CUSTOMER);
-        this.updateOrderByIdStmt = session.prepare(UPDATE_ORDER_BY_ID);
-        this.updateOrderByTimestampStmt = session.prepare(UPDATE_ORDER_BY_TIMESTAMP);
-        this.updateOrderLineStmt = session.prepare(UPDATE_ORDER_LINE);
-        this.updateCustomerByDeliveryStmt = session.prepare(UPDATE_CUSTOMER_BY_DELIVERY);
+    DeliveryTransaction(StatementRegistry statements) {
+        this.statements = statements;
     }
 
     /* Start of public methods */
@@ -71,17 +64,30 @@ public class DeliveryTransaction {
      * @param carrierId : used for carrier identifier
      */
     void processDelivery(int wId, int carrierId) {
+        if (Transactions.ASYNC) {
+            // districts touch disjoint partitions, deliver all of them at once
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            for (int dId=1; dId<=10; dId++) {
+                futures.add(deliverAsync(wId, dId, carrierId));
+            }
+            Futures.getUnchecked(Futures.allAsList(futures));
+            return;
+        }
+
         for (int dId=1; dId<=10; dId++) {
-            selectSmallestOrder(wId, dId);
-            int oId = targetOrder.getInt("o_id");
-            int cId = targetOrder.getInt("o_c_id");
-            Date o_entry_d = targetOrder.getTimestamp("o_entry_d");
+            Row order = selectSmallestOrder(wId, dId);
+            if (order == null) {
+                continue;
+            }
+            int oId = order.getInt("o_id");
+            int cId = order.getInt("o_c_id");
+            Date o_entry_d = order.getTimestamp("o_entry_d");
             updateOrderByCarrier(wId, dId, cId, oId, carrierId, o_entry_d);
 
             Date ol_delivery_d = new Date();
             BigDecimal olAmountSum = selectAndUpdateOrderLines(wId, dId, oId, ol_delivery_d);
-            selectCustomer(wId, dId, cId);
-            updateCustomerByDelivery(wId, dId, cId, olAmountSum, carrierId);
+            Row customer = selectCustomer(wId, dId, cId);
+            updateCustomerByDelivery(wId, dId, cId, customer, olAmountSum, carrierId);
         }
     }
 
@@ -89,50 +95,105 @@ public class DeliveryTransaction {
 
     /*  Start of private methods */
 
-    private void selectSmallestOrder(final int w_id, final int d_id) {
-        ResultSet resultSet = session.execute(selectSmallestOrderStmt.bind(w_id, d_id));
-        List<Row> orders = resultSet.all();
+    /**
+     * Deliver the oldest undelivered order of one district.
+     * Once the order is found, both order updates, the order line read and the customer read are sent together,
+     * every order line update is sent once the lines are read and the customer update once both reads complete.
+     */
+    private ListenableFuture<Void> deliverAsync(final int w_id, final int d_id, final int carrier_id) {
+        ListenableFuture<ResultSet> orderFuture =
+                statements.executeAsync(Query.DELIVERY_SELECT_SMALLEST_ORDER, w_id, d_id);
+        return Futures.transformAsync(orderFuture, orders -> {
+            Row order = orders.one();
+            if (order == null) {
+                return Futures.immediateFuture(null);
+            }
+            int o_id = order.getInt("o_id");
+            int c_id = order.getInt("o_c_id");
+            Date ol_delivery_d = new Date();
 
-        if(!orders.isEmpty()) {
-            targetOrder = orders.get(0);
-        }
+            // order lines are used by two steps, read them once into a list (at most 15 lines, a single page)
+            ListenableFuture<List<Row>> orderLinesFuture = Futures.transform(
+                    statements.executeAsync(Query.DELIVERY_SELECT_ORDER_LINES, w_id, d_id, o_id),
+                    (Function<ResultSet, List<Row>>) ResultSet::all, DIRECT);
+            ListenableFuture<ResultSet> customerFuture =
+                    statements.executeAsync(Query.DELIVERY_SELECT_CUSTOMER, w_id, d_id, c_id);
+
+            List<ListenableFuture<?>> futures = new ArrayList<>();
+            futures.add(statements.executeAsync(Query.DELIVERY_UPDATE_ORDER_BY_ID,
+                    carrier_id, w_id, d_id, o_id, c_id));
+            futures.add(statements.executeAsync(Query.DELIVERY_UPDATE_ORDER_BY_TIMESTAMP,
+                    carrier_id, w_id, d_id, order.getTimestamp("o_entry_d"), o_id, c_id));
+            futures.add(Futures.transformAsync(orderLinesFuture,
+                    orderLines -> statements.executeBatchAsync(bindOrderLineUpdates(orderLines, ol_delivery_d,
+                            w_id, d_id, o_id)), DIRECT));
+            futures.add(Futures.transformAsync(Futures.allAsList(orderLinesFuture, customerFuture), results -> {
+                @SuppressWarnings("unchecked")
+                BigDecimal sum = sumAmount((List<Row>) results.get(0));
+                Row customer = ((ResultSet) results.get(1)).one();
+                return statements.executeAsync(Query.DELIVERY_UPDATE_CUSTOMER,
+                        customer.getDecimal("c_balance").add(sum), customer.getInt("c_delivery_cnt") + 1,
+                        carrier_id, w_id, d_id, c_id);
+            }, DIRECT));
+            return Futures.transform(Futures.allAsList(futures), (Function<List<Object>, Void>) ignored -> null,
+                    DIRECT);
+        }, DIRECT);
     }
 
-    private BigDecimal selectAndUpdateOrderLines(final int w_id, final int d_id, final int o_id, final Date ol_delivery_d) {
-        ResultSet resultSet = session.execute(selectOrderLinesStmt.bind(w_id, d_id, o_id));
-        List<Row> resultRow = resultSet.all();
+    private BigDecimal sumAmount(List<Row> orderLines) {
         BigDecimal sum = new BigDecimal(0);
+        for (Row orderLine : orderLines) {
+            sum = sum.add(orderLine.getDecimal("ol_amount"));
+        }
+        return sum;
+    }
 
-        for (int i=0; i<resultRow.size(); i++) {
-            Row orderLine = resultRow.get(i);
-            BigDecimal partial_sum = orderLine.getDecimal("ol_amount");
-            int ol_number = orderLine.getInt("ol_number");
-
-            sum = sum.add(partial_sum);
-            session.execute(updateOrderLineStmt.bind(ol_delivery_d, w_id, d_id, o_id, ol_number));
+    // all lines of an order are in one partition, their updates can be sent by one batch
+    private List<BoundStatement> bindOrderLineUpdates(final List<Row> orderLines, final Date ol_delivery_d,
+                                                      final int w_id, final int d_id, final int o_id) {
+        List<BoundStatement> updates = new ArrayList<>();
+        for (Row orderLine : orderLines) {
+            updates.add(statements.bind(Query.DELIVERY_UPDATE_ORDER_LINE,
+                    ol_delivery_d, w_id, d_id, o_id, orderLine.getInt("ol_number")));
         }
+        return updates;
+    }
 
-        return sum;
+    private Row selectSmallestOrder(final int w_id, final int d_id) {
+        ResultSet resultSet = statements.execute(Query.DELIVERY_SELECT_SMALLEST_ORDER, w_id, d_id);
+        return resultSet.one();
     }
 
-    private void selectCustomer(final int w_id, final int d_id, final int c_id) {
-        ResultSet resultSet = session.execute(selectCustomerStmt.bind(w_id, d_id, c_id));
-        List<Row> customers = resultSet.all();
+    private BigDecimal selectAndUpdateOrderLines(final int w_id, final int d_id, final int o_id, final Date ol_delivery_d) {
+        // sum the amounts as the lines are read, then update all lines by one batch
+        List<BoundStatement> updates = new ArrayList<>();
+        BigDecimal sum = statements.stream(Query.DELIVERY_SELECT_ORDER_LINES, w_id, d_id, o_id).fold(BigDecimal.ZERO,
+                (amount, orderLine) -> {
+                    updates.add(statements.bind(Query.DELIVERY_UPDATE_ORDER_LINE,
+                            ol_delivery_d, w_id, d_id, o_id, orderLine.getInt("ol_number")));
+                    return amount.add(orderLine.getDecimal("ol_amount"));
+                });
+        statements.executeBatch(updates);
+        return sum;
+    }
 
-        if(!customers.isEmpty()) {
-            targetCustomer = customers.get(0);
-        }
+    private Row selectCustomer(final int w_id, final int d_id, final int c_id) {
+        ResultSet resultSet = statements.execute(Query.DELIVERY_SELECT_CUSTOMER, w_id, d_id, c_id);
+        return resultSet.one();
     }
 
     private void updateOrderByCarrier(final int w_id, final int d_id, final int c_id, final int o_id, final int carrier_id, final Date o_entry_d) {
-        session.execute(updateOrderByIdStmt.bind(carrier_id, w_id, d_id, o_id, c_id));
-        session.execute(updateOrderByTimestampStmt.bind(carrier_id, w_id, d_id, o_entry_d, o_id, c_id));
+        statements.execute(Query.DELIVERY_UPDATE_ORDER_BY_ID, carrier_id, w_id, d_id, o_id, c_id);
+        statements.execute(Query.DELIVERY_UPDATE_ORDER_BY_TIMESTAMP,
+                carrier_id, w_id, d_id, o_entry_d, o_id, c_id);
     }
 
-    private void updateCustomerByDelivery(final int w_id, final int d_id, final int c_id, final BigDecimal ol_amount_sum, final int carrier_id) {
-        BigDecimal c_balance = targetCustomer.getDecimal("c_balance").add(ol_amount_sum);
-        int c_delivery_cnt = targetCustomer.getInt("c_delivery_cnt") + 1;
-        session.execute(updateCustomerByDeliveryStmt.bind(c_balance, c_delivery_cnt, carrier_id, w_id, d_id, c_id));
+    private void updateCustomerByDelivery(final int w_id, final int d_id, final int c_id, final Row customer,
+                                          final BigDecimal ol_amount_sum, final int carrier_id) {
+        BigDecimal c_balance = customer.getDecimal("c_balance").add(ol_amount_sum);
+        int c_delivery_cnt = customer.getInt("c_delivery_cnt") + 1;
+        statements.execute(Query.DELIVERY_UPDATE_CUSTOMER,
+                c_balance, c_delivery_cnt, carrier_id, w_id, d_id, c_id);
     }
 
     /*  End of private methods */
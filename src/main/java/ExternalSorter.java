@@ -0,0 +1,172 @@
+package main.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts raw .csv lines by a long key within a bounded amount of heap.
+ * Lines are buffered until the memory limit is reached, then the buffer is sorted and
+ * spilled to a run file. {@link #sorted()} merges all runs in a single pass.
+ * Records with equal keys keep no particular order.
+ */
+class ExternalSorter {
+    // rough heap cost of a Record and its byte[] besides the line itself
+    private static final int RECORD_OVERHEAD = 48;
+
+    private final String name;
+    private final File spillDir;
+    private final long memoryLimit;
+    private final List<File> runs = new ArrayList<>();
+    private List<Record> buffer = new ArrayList<>();
+    private long bufferedBytes;
+
+    /**
+     * @param name : prefix of the spilled run files
+     * @param spillDir : folder to place run files in
+     * @param memoryLimit : maximum heap in bytes used by buffered lines
+     */
+    ExternalSorter(String name, File spillDir, long memoryLimit) {
+        this.name = name;
+        this.spillDir = spillDir;
+        this.memoryLimit = memoryLimit;
+    }
+
+    static class Record {
+        final long key;
+        final byte[] line;
+
+        Record(long key, byte[] line) {
+            this.key = key;
+            this.line = line;
+        }
+    }
+
+    synchronized void add(long key, byte[] line) throws IOException {
+        buffer.add(new Record(key, line));
+        bufferedBytes += line.length + RECORD_OVERHEAD;
+        if (bufferedBytes >= memoryLimit) {
+            spill();
+        }
+    }
+
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Iterate all added records in key order. No more records can be added afterwards.
+     */
+    synchronized Iterator<Record> sorted() throws IOException {
+        buffer.sort(Comparator.comparingLong(r -> r.key));
+        if (runs.isEmpty()) {
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        return new MergeIterator(runs);
+    }
+
+    /**
+     * Delete all spilled run files.
+     */
+    synchronized void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer = new ArrayList<>();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(Comparator.comparingLong(r -> r.key));
+        File run = File.createTempFile(name + "-run-", ".bin", spillDir);
+        run.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            for (Record record : buffer) {
+                out.writeLong(record.key);
+                out.writeInt(record.line.length);
+                out.write(record.line);
+            }
+        }
+        runs.add(run);
+        buffer = new ArrayList<>();
+        bufferedBytes = 0;
+    }
+
+    // k-way merge over the sorted run files
+    private static class MergeIterator implements Iterator<Record> {
+        private final PriorityQueue<RunReader> queue =
+                new PriorityQueue<>(Comparator.comparingLong((RunReader r) -> r.head.key));
+
+        MergeIterator(List<File> runs) throws IOException {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+            RunReader reader = queue.poll();
+            if (reader == null) {
+                throw new NoSuchElementException();
+            }
+            Record record = reader.head;
+            try {
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return record;
+        }
+    }
+
+    private static class RunReader {
+        private final DataInputStream in;
+        private Record head;
+
+        RunReader(File run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 16));
+        }
+
+        boolean advance() throws IOException {
+            long key;
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                in.close();
+                head = null;
+                return false;
+            }
+            byte[] line = new byte[in.readInt()];
+            in.readFully(line);
+            head = new Record(key, line);
+            return true;
+        }
+    }
+}
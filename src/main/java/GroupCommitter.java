@@ -0,0 +1,174 @@
+package main.java;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Collects the writes of all clients to the same partition of a table during a short window
+ * and sends them together as one unlogged single-partition batch, completing the future of every write
+ * when the batch completes. A group is sent when its window ends or once it has maxBatchSize writes.
+ *
+ * All writes of a batch get the same timestamp: two writes of the same cell in one batch
+ * are resolved by value rather than by order, as for two concurrent writes of different clients.
+ */
+class GroupCommitter {
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Function<Statement, ListenableFuture<ResultSet>> sender;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "group-commit-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // groups collecting writes, guarded by this
+    private final Map<GroupKey, Group> openGroups = new HashMap<>();
+    // number of batches sent by batch size
+    private final AtomicLongArray batchSizes;
+
+    /**
+     * @param sender : sends a write or a batch of writes
+     */
+    GroupCommitter(long windowMicros, int maxBatchSize, Function<Statement, ListenableFuture<ResultSet>> sender) {
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.sender = sender;
+        this.batchSizes = new AtomicLongArray(this.maxBatchSize + 1);
+    }
+
+    /**
+     * Add the write to the group of its partition.
+     * @param table : table written
+     * @param routingKey : partition key written
+     * @return future completing once the batch of the write completes
+     */
+    ListenableFuture<ResultSet> add(String table, ByteBuffer routingKey, Statement statement) {
+        GroupKey key = new GroupKey(table, routingKey);
+        SettableFuture<ResultSet> result = SettableFuture.create();
+        Group full = null;
+        synchronized (this) {
+            Group group = openGroups.get(key);
+            if (group == null) {
+                group = new Group(key);
+                openGroups.put(key, group);
+                final Group newGroup = group;
+                timer.schedule(() -> flush(newGroup), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            group.statements.add(statement);
+            group.results.add(result);
+            if (group.statements.size() >= maxBatchSize) {
+                openGroups.remove(key);
+                full = group;
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    /**
+     * Print how many batches of every size were sent.
+     */
+    void printMetrics() {
+        long batches = 0;
+        long writes = 0;
+        for (int size = 1; size < batchSizes.length(); size++) {
+            batches += batchSizes.get(size);
+            writes += size * batchSizes.get(size);
+        }
+        System.out.printf("Group commit: %d writes in %d batches (%.2f writes per batch) \n",
+                writes, batches, (batches == 0) ? 0.0 : (double) writes / batches);
+        for (int size = 1; size < batchSizes.length(); size++) {
+            if (batchSizes.get(size) > 0) {
+                System.out.printf("  batch size %d : %d \n", size, batchSizes.get(size));
+            }
+        }
+    }
+
+    // called once the window of the group ends, unless it was sent full before
+    private void flush(Group group) {
+        synchronized (this) {
+            if (openGroups.get(group.key) != group) {
+                return;
+            }
+            openGroups.remove(group.key);
+        }
+        send(group);
+    }
+
+    private void send(Group group) {
+        int size = group.statements.size();
+        batchSizes.incrementAndGet(size);
+        Statement statement = group.statements.get(0);
+        if (size > 1) {
+            statement = new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(group.statements);
+        }
+
+        Futures.addCallback(sender.apply(statement), new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+                for (SettableFuture<ResultSet> result : group.results) {
+                    result.set(resultSet);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                for (SettableFuture<ResultSet> result : group.results) {
+                    result.setException(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static final class Group {
+        private final GroupKey key;
+        private final List<Statement> statements = new ArrayList<>();
+        private final List<SettableFuture<ResultSet>> results = new ArrayList<>();
+
+        Group(GroupKey key) {
+            this.key = key;
+        }
+    }
+
+    private static final class GroupKey {
+        private final String table;
+        private final ByteBuffer routingKey;
+
+        GroupKey(String table, ByteBuffer routingKey) {
+            this.table = table;
+            this.routingKey = routingKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey other = (GroupKey) o;
+            return table.equals(other.table) && routingKey.equals(other.routingKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.hashCode() + routingKey.hashCode();
+        }
+    }
+}
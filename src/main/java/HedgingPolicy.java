@@ -0,0 +1,166 @@
+package main.java;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.SpeculativeExecutionPolicy;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedges the requests of the prepared statements given to {@link #hedge(PreparedStatement)}, if idempotent:
+ * if a request has not completed after the given percentile of the latencies of the last SAMPLE_COUNT requests
+ * of those statements, the driver sends it once more, to the next replica, and uses whichever response comes first.
+ * Hedges stop while they exceed maxHedgeRatio of the requests, so a slow cluster is not loaded even more.
+ *
+ * Registered on the cluster both as its speculative execution policy and as a latency tracker.
+ */
+class HedgingPolicy implements SpeculativeExecutionPolicy, LatencyTracker {
+    private static final int SAMPLE_COUNT = 1024;
+    // the delay is computed again every UPDATE_INTERVAL samples
+    private static final int UPDATE_INTERVAL = 128;
+
+    private final double percentile;
+    private final double maxHedgeRatio;
+    // last latencies in nanoseconds, guarded by this
+    private final long[] samples = new long[SAMPLE_COUNT];
+    private int sampleCount;
+    private int nextSample;
+    // -1 until enough latencies are known
+    private volatile long delayMillis = -1;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final ConcurrentMap<String, TypeStats> typeStats = new ConcurrentHashMap<>();
+    private final Set<PreparedStatement> hedgedStatements = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param percentile : percentile of latencies after which a request is hedged, e.g. 99
+     * @param maxHedgeRatio : at most this ratio of requests is hedged, e.g. 0.05
+     */
+    HedgingPolicy(double percentile, double maxHedgeRatio) {
+        this.percentile = percentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * Hedge the requests of the prepared statement.
+     */
+    void hedge(PreparedStatement statement) {
+        hedgedStatements.add(statement);
+    }
+
+    @Override
+    public void init(Cluster cluster) {
+    }
+
+    @Override
+    public SpeculativeExecutionPlan newPlan(String loggedKeyspace, Statement statement) {
+        if (!isHedged(statement)) {
+            return lastQueried -> -1;
+        }
+        requests.increment();
+        return new SpeculativeExecutionPlan() {
+            private int executions;
+
+            @Override
+            public long nextExecution(Host lastQueried) {
+                // asked again once the delay elapsed and the hedge was sent, a request is hedged only once
+                if (executions++ > 0) {
+                    hedges.increment();
+                    return -1;
+                }
+                if (hedges.sum() >= maxHedgeRatio * requests.sum()) {
+                    return -1;
+                }
+                return delayMillis;
+            }
+        };
+    }
+
+    @Override
+    public void update(Host host, Statement statement, Exception exception, long newLatencyNanos) {
+        if (exception != null || !isHedged(statement)) {
+            return;
+        }
+        long[] sorted = null;
+        synchronized (this) {
+            samples[nextSample] = newLatencyNanos;
+            nextSample = (nextSample + 1) % SAMPLE_COUNT;
+            sampleCount = Math.min(sampleCount + 1, SAMPLE_COUNT);
+            if (sampleCount == SAMPLE_COUNT && nextSample % UPDATE_INTERVAL == 0) {
+                sorted = samples.clone();
+            }
+        }
+        if (sorted != null) {
+            Arrays.sort(sorted);
+            long delayNanos = sorted[(int) Math.min(SAMPLE_COUNT - 1, SAMPLE_COUNT * percentile / 100)];
+            delayMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        }
+    }
+
+    private boolean isHedged(Statement statement) {
+        return Boolean.TRUE.equals(statement.isIdempotent()) && statement instanceof BoundStatement
+                && hedgedStatements.contains(((BoundStatement) statement).preparedStatement());
+    }
+
+    @Override
+    public void onRegister(Cluster cluster) {
+    }
+
+    @Override
+    public void onUnregister(Cluster cluster) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Record a completed read of the transaction type.
+     */
+    void record(String transactionType, ExecutionInfo executionInfo, long latencyNanos) {
+        TypeStats stats = typeStats.computeIfAbsent(transactionType, type -> new TypeStats());
+        stats.reads.increment();
+        stats.latencyNanos.add(latencyNanos);
+        if (executionInfo.getSpeculativeExecutions() > 0) {
+            stats.hedged.increment();
+        }
+        if (executionInfo.getSuccessfulExecutionIndex() > 0) {
+            stats.hedgeWins.increment();
+        }
+    }
+
+    /**
+     * Print the hedge delay, and the reads, hedges and mean latency of every transaction type.
+     */
+    void printMetrics() {
+        System.out.printf("Hedged reads: p%s delay %d ms, %d of %d hedgeable requests hedged (at most %.1f%%) \n",
+                percentile, delayMillis, hedges.sum(), requests.sum(), maxHedgeRatio * 100);
+        for (Map.Entry<String, TypeStats> entry : new TreeMap<>(typeStats).entrySet()) {
+            TypeStats stats = entry.getValue();
+            long reads = stats.reads.sum();
+            System.out.printf("  %s : %d reads, mean latency %.2f ms, %d hedged (%.2f%%), %d answered by the hedge \n",
+                    entry.getKey(), reads, stats.latencyNanos.sum() / 1e6 / Math.max(1, reads), stats.hedged.sum(),
+                    stats.hedged.sum() * 100.0 / Math.max(1, reads), stats.hedgeWins.sum());
+        }
+    }
+
+    private static final class TypeStats {
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final LongAdder hedged = new LongAdder();
+        private final LongAdder hedgeWins = new LongAdder();
+    }
+}
@@ -0,0 +1,60 @@
+package main.java;
+
+import java.util.Date;
+
+/**
+ * Keeps the latest order <C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID> of every customer,
+ * keyed by packed (W_ID, D_ID, C_ID), in parallel primitive arrays.
+ * Writes are synchronized, reads must only happen after all writes are done.
+ */
+class LastOrderIndex {
+    private final LongIndex index;
+    private int[] orderIds;
+    private long[] entryDates;
+    private int[] carrierIds;
+
+    LastOrderIndex(int expectedSize) {
+        int capacity = Math.max(1, expectedSize);
+        index = new LongIndex(expectedSize);
+        orderIds = new int[capacity];
+        entryDates = new long[capacity];
+        carrierIds = new int[capacity];
+    }
+
+    /**
+     * Record an order of the customer, only the order with the largest id is kept.
+     */
+    synchronized void update(long customerKey, int orderId, Date entryDate, int carrierId) {
+        int size = index.size();
+        int ordinal = index.findOrAdd(customerKey);
+        if (ordinal == size) {
+            orderIds = LongIndex.ensureCapacity(orderIds, size + 1);
+            entryDates = LongIndex.ensureCapacity(entryDates, size + 1);
+            carrierIds = LongIndex.ensureCapacity(carrierIds, size + 1);
+        } else if (orderIds[ordinal] >= orderId) {
+            return;
+        }
+        orderIds[ordinal] = orderId;
+        entryDates[ordinal] = entryDate.getTime();
+        carrierIds[ordinal] = carrierId;
+    }
+
+    /**
+     * @return ordinal of the customer, or -1 if the customer has no order
+     */
+    int find(long customerKey) {
+        return index.find(customerKey);
+    }
+
+    int getOrderId(int ordinal) {
+        return orderIds[ordinal];
+    }
+
+    Date getEntryDate(int ordinal) {
+        return new Date(entryDates[ordinal]);
+    }
+
+    int getCarrierId(int ordinal) {
+        return carrierIds[ordinal];
+    }
+}
@@ -0,0 +1,83 @@
+package main.java;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Small properties file recording how far each part of a bulk load got:
+ * either the offset in its data file up to which all rows are written, or "done".
+ * The file is replaced atomically on every update, so a crash never leaves a torn checkpoint.
+ */
+class LoadCheckpoint {
+    private static final String DONE = "done";
+
+    private final File file;
+    private final Properties progress = new Properties();
+
+    LoadCheckpoint(File file) {
+        this.file = file;
+    }
+
+    boolean exists() {
+        return file.isFile();
+    }
+
+    synchronized void load() {
+        try (InputStream in = new FileInputStream(file)) {
+            progress.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Read checkpoint " + file + " failed.", e);
+        }
+    }
+
+    /**
+     * Forget all progress, for a load that starts from scratch.
+     */
+    synchronized void reset() {
+        progress.clear();
+        save();
+    }
+
+    synchronized boolean isDone(String name) {
+        return DONE.equals(progress.getProperty(name));
+    }
+
+    /**
+     * @return offset in the data file to resume from, 0 if nothing was written yet
+     */
+    synchronized long getOffset(String name) {
+        String value = progress.getProperty(name);
+        return (value == null || DONE.equals(value)) ? 0 : Long.parseLong(value);
+    }
+
+    synchronized void update(String name, long offset) {
+        progress.setProperty(name, String.valueOf(offset));
+        save();
+    }
+
+    synchronized void markDone(String name) {
+        progress.setProperty(name, DONE);
+        save();
+    }
+
+    private void save() {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                progress.store(out, "Setup load progress, delete to start over");
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write checkpoint " + file + " failed.", e);
+        }
+    }
+}
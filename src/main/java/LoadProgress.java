@@ -0,0 +1,84 @@
+package main.java;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints rows/sec and an estimated time to completion for every table being loaded at a fixed interval.
+ * The estimate is based on how much of the table's data file has been processed.
+ */
+class LoadProgress {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "load-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    LoadProgress(int intervalSeconds) {
+        reporter.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    class Entry {
+        private final String table;
+        private final TableWriter writer;
+        private final long fileSize;
+        private final long startOffset;
+        private final long startRows;
+        private final long startTime = System.currentTimeMillis();
+        private volatile long offset;
+
+        private Entry(String table, TableWriter writer, long fileSize, long startOffset) {
+            this.table = table;
+            this.writer = writer;
+            this.fileSize = fileSize;
+            this.startOffset = startOffset;
+            this.startRows = writer.getRowCount();
+            this.offset = startOffset;
+        }
+
+        void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        void finish() {
+            entries.remove(table);
+        }
+    }
+
+    /**
+     * Start reporting progress of a table.
+     * @param fileSize : size of the data file, 0 if unknown
+     * @param startOffset : offset the load resumes from
+     */
+    Entry track(String table, TableWriter writer, long fileSize, long startOffset) {
+        Entry entry = new Entry(table, writer, fileSize, startOffset);
+        entries.put(table, entry);
+        return entry;
+    }
+
+    void close() {
+        reporter.shutdownNow();
+    }
+
+    private void report() {
+        for (Entry entry : entries.values()) {
+            double seconds = Math.max(1, System.currentTimeMillis() - entry.startTime) / 1000.0;
+            long rows = entry.writer.getRowCount();
+            String message = String.format("Progress for table : %s, %d rows (%.0f rows/sec)",
+                    entry.table, rows, (rows - entry.startRows) / seconds);
+
+            long processed = entry.offset - entry.startOffset;
+            if (entry.fileSize > 0 && processed > 0) {
+                long remainingSeconds = (long) (seconds * (entry.fileSize - entry.offset) / processed);
+                message += String.format(", %.1f%% of file, ETA %02d:%02d:%02d",
+                        entry.offset * 100.0 / entry.fileSize,
+                        remainingSeconds / 3600, remainingSeconds / 60 % 60, remainingSeconds % 60);
+            }
+            System.out.println(message);
+        }
+    }
+}
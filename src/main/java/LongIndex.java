@@ -0,0 +1,101 @@
+package main.java;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index from a primitive long key to a dense ordinal (0, 1, 2, ...).
+ * Callers keep values for a key in parallel arrays indexed by its ordinal,
+ * so neither keys nor values are boxed and lookups do not allocate.
+ * Not thread-safe: concurrent writers must synchronize externally.
+ */
+class LongIndex {
+    private static final int NOT_FOUND = -1;
+
+    private long[] keys;
+    // ordinal + 1 of the key stored in the same slot, 0 marks an empty slot
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    LongIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return ordinal of the key, or -1 if the key is absent
+     */
+    int find(long key) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == 0) {
+                return NOT_FOUND;
+            } else if (keys[i] == key) {
+                return slots[i] - 1;
+            }
+        }
+    }
+
+    /**
+     * @return ordinal of the key, a new ordinal equal to the previous size is assigned if the key is absent
+     */
+    int findOrAdd(long key) {
+        int i = hash(key) & mask;
+        for (; slots[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return slots[i] - 1;
+            }
+        }
+        keys[i] = key;
+        slots[i] = ++size;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+        return size - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[oldKeys.length * 2];
+        slots = new int[oldSlots.length * 2];
+        mask = keys.length - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldSlots[j] != 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+    }
+
+    /**
+     * @return array of at least the given length holding the content of the given array
+     */
+    static int[] ensureCapacity(int[] array, int length) {
+        return (array.length >= length) ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    static long[] ensureCapacity(long[] array, int length) {
+        return (array.length >= length) ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    // murmur3 finalizer, spreads packed keys with small varying fields over all bits
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -1,8 +1,10 @@
 package main.java;
 
 import java.io.*;
+import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 /**
  * Client class which use separate threads to mimic different clients querying the same server.
@@ -24,6 +26,8 @@ class ClientThread implements Callable<Triple<Integer, Long, Double>> {
     private int index;
     private String consistencyLevel;
     private Transactions transaction;
+    // null if the client runs its own transactions
+    private WarehouseScheduler scheduler;
 
     ClientThread(int index, String consistencyLevel) {
         this.index = index;
@@ -50,38 +54,40 @@ class ClientThread implements Callable<Triple<Integer, Long, Double>> {
                         itemOrders.add(order);
                     }
 
-                    transaction.processOrder(Integer.parseInt(instruction[1]),
+                    execute(Integer.parseInt(instruction[2]), t -> t.processOrder(Integer.parseInt(instruction[1]),
                             Integer.parseInt(instruction[2]),
                             Integer.parseInt(instruction[3]),
-                            itemOrders);
+                            itemOrders));
                     break;
                 case "P":
                     // payment transaction
-                    transaction.processPayment(Integer.parseInt(instruction[1]),
+                    execute(Integer.parseInt(instruction[1]), t -> t.processPayment(Integer.parseInt(instruction[1]),
                             Integer.parseInt(instruction[2]),
                             Integer.parseInt(instruction[3]),
-                            Float.parseFloat(instruction[4]));
+                            Float.parseFloat(instruction[4])));
                     break;
                 case "D":
                     // delivery transaction
-                    transaction.processDelivery(Integer.parseInt(instruction[1]),
-                            Integer.parseInt(instruction[2]));
+                    execute(Integer.parseInt(instruction[1]), t -> t.processDelivery(Integer.parseInt(instruction[1]),
+                            Integer.parseInt(instruction[2])));
                     break;
                 case "O":
-                    // Order-Status transaction
-                    transaction.processOrderStatus(Integer.parseInt(instruction[1]),
+                    // Order-Status transaction, read only, run by the client as it needs no single writer
+                    transaction.processOrderStatus(
+                            Integer.parseInt(instruction[1]),
                             Integer.parseInt(instruction[2]),
                             Integer.parseInt(instruction[3]));
                     break;
                 case "S":
-                    // Stock-Level transaction
-                    transaction.processStockLevel(Integer.parseInt(instruction[1]),
+                    // Stock-Level transaction, read only
+                    transaction.processStockLevel(
+                            Integer.parseInt(instruction[1]),
                             Integer.parseInt(instruction[2]),
                             Integer.parseInt(instruction[3]),
                             Integer.parseInt(instruction[4]));
                     break;
                 case "I":
-                    // Popular-Item transaction
+                    // Popular-Item transaction, read only
                     transaction.popularItem(Integer.parseInt(instruction[1]),
                             Integer.parseInt(instruction[2]),
                             Integer.parseInt(instruction[3]));
@@ -97,9 +103,19 @@ class ClientThread implements Callable<Triple<Integer, Long, Double>> {
         return transactionCount;
     }
 
+    // run the transaction writing a warehouse on the worker owning the warehouse, if transactions are scheduled
+    private void execute(int wId, Consumer<Transactions> body) {
+        if (scheduler == null) {
+            body.accept(transaction);
+        } else {
+            scheduler.execute(wId, body);
+        }
+    }
+
     @Override
     public Triple<Integer, Long, Double> call() throws Exception {
         this.transaction = new Transactions(this.index, this.consistencyLevel);
+        this.scheduler = WarehouseScheduler.get(this.consistencyLevel);
         // anti-pattern here, but too lazy to replace with Optional ... :)
         Triple<Integer, Long, Double> result = null;
 
@@ -132,6 +148,8 @@ class ClientThread implements Callable<Triple<Integer, Long, Double>> {
  * Main driver class that simulates clients issuing transactions to the database.
  */
 public class Main {
+    private static final String CLIENT_EXECUTOR_KEY = "CLIENT_EXECUTOR";
+
     public static void main(String[] args) {
         Scanner sc = new Scanner(System.in);
         System.out.println("Please enter number of clients "
@@ -147,9 +165,7 @@ public class Main {
         }
         sc.close();
 
-        // not sure if this is what we want, but Runtime.getRuntime().availableProcessors() doesn't satisfy requirement
-        ExecutorService executor = Executors.newFixedThreadPool(
-                Math.max(1, clientCount));
+        ExecutorService executor = newClientExecutor(clientCount);
         List<Future<Triple<Integer, Long, Double>>> futureMeasurements = new ArrayList<>();
 
         if (clientCount <= 0) {
@@ -176,10 +192,32 @@ public class Main {
             }
         }
 
+        executor.shutdown();
+
         outputPerformanceResult(measurementMap);
+        SharedSession.printMetrics();
         System.out.println("\nAll client have completed their transactions.");
     }
 
+    /**
+     * "platform" (default) runs every client on its own platform thread,
+     * "virtual" runs every client on a virtual thread (Java 21 or later), so thousands of clients blocking on
+     * requests share a carrier pool sized to the number of processors.
+     */
+    private static ExecutorService newClientExecutor(int clientCount) {
+        if (Setup.getConfig(CLIENT_EXECUTOR_KEY, "platform").equalsIgnoreCase("virtual")) {
+            try {
+                // looked up by reflection as the project is compiled for Java 8
+                Method newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) newExecutor.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads require Java 21 or later, clients run on platform threads.");
+            }
+        }
+        // not sure if this is what we want, but Runtime.getRuntime().availableProcessors() doesn't satisfy requirement
+        return Executors.newFixedThreadPool(Math.max(1, clientCount));
+    }
+
     // output performance result
     private static void outputPerformanceResult(Map<Integer, Triple<Integer, Long, Double>> measurementMap) {
         int clientCount = measurementMap.size();
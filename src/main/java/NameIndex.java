@@ -0,0 +1,63 @@
+package main.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps a long key to a fixed number of short strings, e.g. the first, middle and last
+ * name of a customer keyed by its packed (W_ID, D_ID, C_ID).
+ * Strings are kept as UTF-8 bytes in one growing arena instead of as String objects,
+ * each value is referenced by a packed (offset, length) long.
+ * Writes are synchronized, reads must only happen after all writes are done.
+ */
+class NameIndex {
+    private final int fieldCount;
+    private final LongIndex index;
+    private long[] refs;
+    private byte[] arena;
+    private int arenaSize;
+
+    NameIndex(int fieldCount, int expectedSize) {
+        this.fieldCount = fieldCount;
+        this.index = new LongIndex(expectedSize);
+        this.refs = new long[Math.max(1, expectedSize) * fieldCount];
+        this.arena = new byte[Math.max(16, expectedSize * fieldCount * 8)];
+    }
+
+    synchronized void put(long key, String... values) {
+        int ordinal = index.findOrAdd(key);
+        refs = LongIndex.ensureCapacity(refs, (ordinal + 1) * fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            refs[ordinal * fieldCount + i] = append(values[i]);
+        }
+    }
+
+    /**
+     * @return ordinal of the key, or -1 if the key is absent
+     */
+    int find(long key) {
+        return index.find(key);
+    }
+
+    String get(int ordinal, int field) {
+        long ref = refs[ordinal * fieldCount + field];
+        if (ref < 0) {
+            return null;
+        }
+        return new String(arena, (int) (ref >>> 32), (int) ref, StandardCharsets.UTF_8);
+    }
+
+    private long append(String value) {
+        if (value == null) {
+            return -1;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (arenaSize + bytes.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arenaSize + bytes.length, arena.length * 2));
+        }
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        long ref = ((long) arenaSize << 32) | bytes.length;
+        arenaSize += bytes.length;
+        return ref;
+    }
+}
@@ -1,88 +1,129 @@
 package main.java;
 
-import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import main.java.StatementRegistry.Query;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 public class OrderStatusTransaction {
-    static final String KEY_SPACE = Setup.KEY_SPACE;
-
-    private Session session;
-
-    OrderStatusTransaction(Session session){
-        this.session = session;
+    private static final Executor DIRECT = MoreExecutors.directExecutor();
+
+    static final String SELECT_CUSTOMER =
+            "SELECT C_FIRST, C_MIDDLE, C_LAST, C_BALANCE, C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID "
+                    + "FROM customers "
+                    + "WHERE C_W_ID = ? AND C_D_ID = ? AND C_ID = ?;";
+    // all lines of an order are in one partition
+    static final String SELECT_ORDER_LINES =
+            "SELECT OL_I_ID, OL_SUPPLY_W_ID, OL_QUANTITY, OL_AMOUNT, OL_DELIVERY_D "
+                    + "FROM order_lines "
+                    + "WHERE OL_W_ID = ? AND OL_D_ID = ? AND OL_O_ID = ?;";
+
+    private final StatementRegistry statements;
+
+    OrderStatusTransaction(StatementRegistry statements){
+        this.statements = statements;
     }
 
-    void processOrderStatus(int c_W_ID, int c_D_ID, int c_ID) {
-        //get customer's name and
-        String getCustomerName = "SELECT C_FIRST, C_MIDDLE, C_LAST, C_BALANCE, C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID FROM " + KEY_SPACE + ".customers " +
-                "WHERE C_W_ID = " + c_W_ID + " AND C_D_ID = " + c_D_ID + " AND C_ID = " + c_ID;
-        Row row1 = session.execute(getCustomerName).one();
-
-        String firstName = row1.getString("C_FIRST");
-        String middleName = row1.getString("C_MIDDLE");
-        String lastName = row1.getString("C_LAST");
-        BigDecimal balance = row1.getDecimal("C_BALANCE");
-        int last_order = row1.getInt("C_LAST_ORDER");
-        Date entry_d = row1.getTimestamp("C_ENTRY_D");
-        int carrier_id = row1.getInt("C_CARRIER_ID");
-
-        //print out customer name and last order info
-        System.out.println("Customer's first name is: " + firstName + ", middle name is: " + middleName + ", last name is: " + lastName + ".");
-        System.out.println("Customer's balance is: " + balance + ".");
-        System.out.println("Last order number is: " + last_order + ".");
-        System.out.println("Last order entry date and time is: " + entry_d +".");
-        System.out.println("Last order carrier identifier is: " + carrier_id + ".");
-        System.out.println("=======Item Info is below.======");
-
-        //for each item in the last order
-        String getCustomerLastOLNumber =  "SELECT OL_NUMBER FROM " + KEY_SPACE + ".order_lines " +
-                "WHERE OL_W_ID = " + c_W_ID + " AND OL_D_ID = " + c_D_ID + " AND OL_O_ID = " + last_order;
-
-        ResultSet row2 = session.execute(getCustomerLastOLNumber);
-/*
-        List<Integer> itemList = new ArrayList<>();
-        List<Integer> supplierWList = new ArrayList<>();
-        List<Integer> quantityList = new ArrayList<>();
-        List<Float> amountList = new ArrayList<>();
-        List<String> deliveryDateList = new ArrayList<>();*/
-
-        int itemID;
-        int supplierWarehouse;
-        BigDecimal quantity;
-        BigDecimal amount;
-        Date deliveryData;
+    /**
+     * Status of the last order of a customer, read with two requests:
+     * the customer, then all lines of its last order.
+     */
+    OrderStatus processOrderStatus(int c_W_ID, int c_D_ID, int c_ID) {
+        if (Transactions.ASYNC) {
+            return Futures.getUnchecked(processOrderStatusAsync(c_W_ID, c_D_ID, c_ID));
+        }
 
-        for (Row row : row2) {
-            int OL_NUMBER = row.getInt("OL_NUMBER");
-            String getItemInfo = "SELECT OL_I_ID, OL_SUPPLY_W_ID, OL_QUANTITY, OL_AMOUNT, OL_DELIVERY_D FROM " + KEY_SPACE + ".order_lines " +
-                    "WHERE OL_W_ID = " + c_W_ID + " AND OL_D_ID = " + c_D_ID + " AND OL_O_ID = " + last_order + " AND OL_NUMBER = " + OL_NUMBER;
+        Row customer = statements.execute(Query.ORDER_STATUS_SELECT_CUSTOMER, c_W_ID, c_D_ID, c_ID).one();
+        List<Row> orderLines = statements.read(Query.ORDER_STATUS_SELECT_ORDER_LINES,
+                c_W_ID, c_D_ID, customer.getInt("C_LAST_ORDER"));
+        return new OrderStatus(customer, orderLines);
+    }
 
-            Row itemInfo = session.execute(getItemInfo).one();
+    /**
+     * Order-Status Transaction sending the order line read from the driver thread completing the customer read.
+     */
+    ListenableFuture<OrderStatus> processOrderStatusAsync(int c_W_ID, int c_D_ID, int c_ID) {
+        ListenableFuture<Row> customerFuture = Futures.transform(
+                statements.readAsync(Query.ORDER_STATUS_SELECT_CUSTOMER, c_W_ID, c_D_ID, c_ID),
+                (Function<List<Row>, Row>) rows -> rows.get(0), DIRECT);
+        return Futures.transformAsync(customerFuture, customer -> Futures.transform(
+                statements.readAsync(Query.ORDER_STATUS_SELECT_ORDER_LINES,
+                        c_W_ID, c_D_ID, customer.getInt("C_LAST_ORDER")),
+                (Function<List<Row>, OrderStatus>) orderLines ->
+                        new OrderStatus(customer, orderLines), DIRECT), DIRECT);
+    }
 
-            /*
-            itemID = itemList.add(itemInfo.getInt("OL_I_ID"));
-            supplierWList.add(itemInfo.getInt("OL_SUPPLY_W_ID"));
-            quantityList.add(itemInfo.getInt("OL_QUANTITY"));
-            amountList.add(itemInfo.getFloat("OL_AMOUNT"));
-            deliveryDateList.add(itemInfo.getString("OL_DELIVERY_D"));*/
+    /**
+     * Customer and lines of its last order.
+     */
+    static class OrderStatus {
+        final String firstName;
+        final String middleName;
+        final String lastName;
+        final BigDecimal balance;
+        final int lastOrder;
+        final Date entryDate;
+        final int carrierId;
+        final List<OrderLine> orderLines = new ArrayList<>();
+
+        OrderStatus(Row customer, List<Row> orderLines) {
+            firstName = customer.getString("C_FIRST");
+            middleName = customer.getString("C_MIDDLE");
+            lastName = customer.getString("C_LAST");
+            balance = customer.getDecimal("C_BALANCE");
+            lastOrder = customer.getInt("C_LAST_ORDER");
+            entryDate = customer.getTimestamp("C_ENTRY_D");
+            carrierId = customer.getInt("C_CARRIER_ID");
+            for (Row orderLine : orderLines) {
+                this.orderLines.add(new OrderLine(orderLine));
+            }
+        }
 
-            itemID = itemInfo.getInt("OL_I_ID");
-            supplierWarehouse = itemInfo.getInt("OL_SUPPLY_W_ID");
-            quantity = itemInfo.getDecimal("OL_QUANTITY");
-            amount = itemInfo.getDecimal("OL_AMOUNT");
-            deliveryData = itemInfo.getTimestamp("OL_DELIVERY_D");
+        void print() {
+            StringBuilder sb = new StringBuilder();
+            //print out customer name and last order info
+            sb.append("Customer's first name is: ").append(firstName).append(", middle name is: ").append(middleName)
+                    .append(", last name is: ").append(lastName).append(".\n");
+            sb.append("Customer's balance is: ").append(balance).append(".\n");
+            sb.append("Last order number is: ").append(lastOrder).append(".\n");
+            sb.append("Last order entry date and time is: ").append(entryDate).append(".\n");
+            sb.append("Last order carrier identifier is: ").append(carrierId).append(".\n");
+            sb.append("=======Item Info is below.======\n");
 
             //for each item in the last order, print out the info
-            System.out.println("Item number: " + itemID );
-            System.out.println("Supplying warehouse number: " + supplierWarehouse);
-            System.out.println("Quantity ordered: " + quantity);
-            System.out.println("Total price for ordered item: " + amount);
-            System.out.println("Data and time of delivery: " + deliveryData);
-            System.out.println("\n\n");
+            for (OrderLine orderLine : orderLines) {
+                sb.append("Item number: ").append(orderLine.itemId).append('\n');
+                sb.append("Supplying warehouse number: ").append(orderLine.supplierWarehouse).append('\n');
+                sb.append("Quantity ordered: ").append(orderLine.quantity).append('\n');
+                sb.append("Total price for ordered item: ").append(orderLine.amount).append('\n');
+                sb.append("Data and time of delivery: ").append(orderLine.deliveryDate).append('\n');
+                sb.append("\n\n\n");
+            }
+            System.out.print(sb);
+        }
+    }
+
+    static class OrderLine {
+        final int itemId;
+        final int supplierWarehouse;
+        final BigDecimal quantity;
+        final BigDecimal amount;
+        final Date deliveryDate;
+
+        OrderLine(Row orderLine) {
+            itemId = orderLine.getInt("OL_I_ID");
+            supplierWarehouse = orderLine.getInt("OL_SUPPLY_W_ID");
+            quantity = orderLine.getDecimal("OL_QUANTITY");
+            amount = orderLine.getDecimal("OL_AMOUNT");
+            deliveryDate = orderLine.getTimestamp("OL_DELIVERY_D");
         }
     }
 }
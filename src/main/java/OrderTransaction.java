@@ -1,91 +1,84 @@
 package main.java;
 
-import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import main.java.StatementRegistry.Query;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 class OrderTransaction {
-    private Session session;
-    private PreparedStatement selectWarehouseStmt;
-    private PreparedStatement selectDistrictStmt;
-    private PreparedStatement selectCustomerStmt;
-    private PreparedStatement selectStockStmt;
-    private PreparedStatement selectItemStmt;
-    private PreparedStatement updateDistrictNextOIdStmt;
-    private PreparedStatement updateCustomerOrderStmt;
-    private PreparedStatement updateStockStmt;
-    private PreparedStatement insertOrderByTimestampStmt;
-    private PreparedStatement insertOrderByIdStmt;
-    private PreparedStatement insertOrderLineStmt;
-
-    private static final String SELECT_WAREHOUSE =
+    // callbacks only issue requests or print, run them on the driver thread completing the request
+    private static final Executor DIRECT = MoreExecutors.directExecutor();
+
+    private final StatementRegistry statements;
+    // null if the warehouses are not cached
+    private final WarehouseCache cache;
+
+    static final String SELECT_WAREHOUSE =
             " SELECT W_TAX "
                     + " FROM warehouses "
                     + " WHERE W_ID = ?; ";
-    private static final String SELECT_DISTRICT =
+    static final String SELECT_DISTRICT =
             " SELECT D_TAX, D_NEXT_O_ID "
                     + " FROM districts "
                     + " WHERE D_W_ID = ? AND D_ID = ?; ";
-    private static final String SELECT_CUSTOMER =
+    static final String SELECT_CUSTOMER =
             " SELECT C_FIRST, C_MIDDLE, C_LAST, C_CREDIT, C_DISCOUNT "
                     + " FROM customers "
                     + " WHERE C_W_ID = ? AND C_D_ID = ? AND C_ID = ?; ";
-    private static final String SELECT_STOCK =
+    static final String SELECT_STOCK =
             " SELECT * "
                     + " FROM stocks "
                     + " WHERE S_W_ID = ? AND S_I_ID = ?; ";
-    private static final String SELECT_ITEM =
+    static final String SELECT_ITEM =
             " SELECT I_NAME, I_PRICE "
                     + " FROM items "
                     + " WHERE I_ID = ?; ";
-    private static final String UPDATE_DISTRICT_NEXT_O_ID =
+    static final String UPDATE_DISTRICT_NEXT_O_ID =
             " UPDATE districts "
                     + " SET D_NEXT_O_ID = ? "
                     + " WHERE D_W_ID = ? AND D_ID = ?; ";
-    private static final String UPDATE_CUSTOMER_ORDER =
+    static final String UPDATE_CUSTOMER_ORDER =
             " UPDATE customers "
                     + " SET C_LAST_ORDER = ?, C_ENTRY_D = ?, C_CARRIER_ID = ? "
                     + " WHERE C_W_ID = ? AND C_D_ID = ? AND C_ID = ?; ";
-    private static final String UPDATE_STOCK =
+    static final String UPDATE_STOCK =
             " UPDATE stocks "
                     + " SET S_QUANTITY = ?, S_YTD = ?, S_ORDER_CNT = ?, S_REMOTE_CNT = ? "
                     + " WHERE S_W_ID = ? AND S_I_ID = ?; ";
-    private static final String INSERT_ORDER_BY_TIMESTAMP =
+    static final String INSERT_ORDER_BY_TIMESTAMP =
             " INSERT INTO orders_by_timestamp ("
                     + " O_W_ID, O_D_ID, O_ENTRY_D, O_ID, "
                     + " O_C_ID, O_CARRIER_ID, O_OL_CNT, O_ALL_LOCAL, "
                     + " O_C_FIRST, O_C_MIDDLE, O_C_LAST ) "
                     + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-    private static final String INSERT_ORDERS_BY_ID =
+    static final String INSERT_ORDERS_BY_ID =
             "INSERT INTO orders_by_id ("
                     + " O_W_ID, O_D_ID, O_ID, O_C_ID, "
                     + " O_ENTRY_D, O_CARRIER_ID, O_OL_CNT, O_ALL_LOCAL, "
                     + " O_C_FIRST, O_C_MIDDLE, O_C_LAST ) "
                     + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-    private static final String INSERT_ORDER_LINE =
+    static final String INSERT_ORDER_LINE =
             "INSERT INTO order_lines ("
                     + " OL_W_ID, OL_D_ID, OL_O_ID, OL_NUMBER, OL_I_ID, OL_I_NAME, "
                     + " OL_AMOUNT, OL_SUPPLY_W_ID, OL_QUANTITY, OL_DIST_INFO ) "
                     + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
 
-    OrderTransaction(Session session) {
-        this.session = session;
-        this.selectWarehouseStmt = session.prepare(SELECT_WAREHOUSE);
-        this.selectDistrictStmt = session.prepare(SELECT_DISTRICT);
-        this.selectCustomerStmt = session.prepare(SELECT_CUSTOMER);
-        this.selectStockStmt = session.prepare(SELECT_STOCK);
-        this.selectItemStmt = session.prepare(SELECT_ITEM);
-        this.updateDistrictNextOIdStmt = session.prepare(UPDATE_DISTRICT_NEXT_O_ID);
-        this.updateCustomerOrderStmt = session.prepare(UPDATE_CUSTOMER_ORDER);
-        this.updateStockStmt = session.prepare(UPDATE_STOCK);
-        this.insertOrderByTimestampStmt = session.prepare(INSERT_ORDER_BY_TIMESTAMP);
-        this.insertOrderByIdStmt = session.prepare(INSERT_ORDERS_BY_ID);
-        this.insertOrderLineStmt = session.prepare(INSERT_ORDER_LINE);
+    OrderTransaction(StatementRegistry statements, WarehouseCache cache) {
+        this.statements = statements;
+        this.cache = cache;
     }
 
     /**
@@ -99,41 +92,37 @@ class OrderTransaction {
      *                   - quantity: quantity ordered for item
      */
     void processOrder(int cId, int wId, int dId, List<List<Integer>> itemOrders) {
-        Row customer = getCustomer(wId, dId, cId);
-        Row district = getDistrict(wId, dId);
-        Row warehouse = getWarehouse(wId);
+        if (Transactions.ASYNC) {
+            Futures.getUnchecked(processOrderAsync(cId, wId, dId, itemOrders));
+            return;
+        }
 
-        double dTax = district.getDecimal("D_TAX").doubleValue();
-        double wTax = warehouse.getDecimal("W_TAX").doubleValue();
+        Row customer = getCustomer(wId, dId, cId);
+        WarehouseCache.District district = getDistrictState(wId, dId);
+        BigDecimal wTax = getWarehouseTax(wId);
 
-        int nextOId = district.getInt("D_NEXT_O_ID");
+        int nextOId = district.nextOrderId++;
         updateDistrictNextOId(nextOId + 1, wId, dId);
 
         // let O_ENTRY_D = current date and time
         Date curDate = new Date();
         BigDecimal olCount = new BigDecimal(itemOrders.size());
-        BigDecimal allLocal = new BigDecimal(1);
-        for (List<Integer> order : itemOrders) {
-            if (order.get(1) != wId) {
-                allLocal = new BigDecimal(0);
-            }
-        }
+        BigDecimal allLocal = getAllLocal(wId, itemOrders);
 
         createNewOrder(nextOId, dId, wId, cId, curDate, olCount, allLocal,
                 customer.getString("C_FIRST"), customer.getString("C_MIDDLE"), customer.getString("C_LAST"));
         updateCustomerOrder(nextOId, curDate, wId, dId, cId);
 
         double totalAmount= 0;
+        // all lines are in the partition of the order, inserted by one batch
+        List<BoundStatement> orderLines = new ArrayList<>();
         for (int i = 0; i < itemOrders.size(); i++) {
             int iId = itemOrders.get(i).get(0);
             int iWId = itemOrders.get(i).get(1);
             int quantity = itemOrders.get(i).get(2);
 
             Row stock = selectStock(iWId, iId);
-            double adjQuantity = stock.getDecimal("S_QUANTITY").doubleValue() - quantity;
-            while (adjQuantity < 10) {
-                adjQuantity += 100;
-            }
+            double adjQuantity = getAdjustedQuantity(stock, quantity);
             BigDecimal adjQuantityDecimal = new BigDecimal(adjQuantity);
 
             updateStock(iWId, iId, adjQuantityDecimal,
@@ -147,15 +136,215 @@ class OrderTransaction {
             String itemName = item.getString("I_NAME");
             BigDecimal itemAmount = item.getDecimal("I_PRICE").multiply(new BigDecimal(quantity));
             totalAmount += itemAmount.doubleValue();
-            createNewOrderLine(wId, dId, nextOId, i, iId, itemName,
-                    itemAmount, iWId, new BigDecimal(quantity), stock.getString(getDistrictStringId(dId)));
+            orderLines.add(bindNewOrderLine(wId, dId, nextOId, i, iId, itemName,
+                    itemAmount, iWId, new BigDecimal(quantity), stock.getString(getDistrictStringId(dId))));
+
+            printOrderLine(iId, itemName, iWId, quantity, itemAmount, adjQuantity);
+        }
+        statements.executeBatch(orderLines);
+
+        printOrder(wId, dId, cId, customer, district.tax, wTax, nextOId, curDate, olCount, totalAmount);
+    }
 
-            // log
-            System.out.printf(
-                    "itemId: %d, itemName: %s, warehouseId: %d, quantity: %d, OL_AMOUNT: %f, S_QUANTITY: %f \n",
-                    iId, itemName, iWId, quantity, itemAmount, adjQuantity);
+    /**
+     * New Order Transaction issuing every request as soon as its inputs are known:
+     * customer, district, warehouse, and all stock and item reads are sent together,
+     * each write is sent once the reads it depends on complete.
+     * A stock ordered by several lines is read again after the update of the previous line, as in the
+     * synchronous transaction, so no update overwrites another one.
+     * @return future completing once all writes are done and the order is printed
+     */
+    ListenableFuture<Void> processOrderAsync(int cId, int wId, int dId, List<List<Integer>> itemOrders) {
+        ListenableFuture<Row> customerFuture = selectOneAsync(Query.NEW_ORDER_SELECT_CUSTOMER, wId, dId, cId);
+        ListenableFuture<WarehouseCache.District> districtFuture = getDistrictStateAsync(wId, dId);
+        ListenableFuture<BigDecimal> warehouseTaxFuture = getWarehouseTaxAsync(wId);
+        List<ListenableFuture<Row>> stockFutures = new ArrayList<>();
+        List<ListenableFuture<Row>> itemFutures = new ArrayList<>();
+        List<ListenableFuture<ResultSet>> stockUpdateFutures = new ArrayList<>();
+        // last update of every stock by (item id, supply warehouse id)
+        Map<List<Integer>, ListenableFuture<ResultSet>> lastStockUpdates = new HashMap<>();
+        for (List<Integer> itemOrder : itemOrders) {
+            int iId = itemOrder.get(0);
+            int iWId = itemOrder.get(1);
+            int quantity = itemOrder.get(2);
+            List<Integer> stockKey = Arrays.asList(iId, iWId);
+            ListenableFuture<ResultSet> previousUpdate = lastStockUpdates.get(stockKey);
+            ListenableFuture<Row> stockFuture = (previousUpdate == null)
+                    ? selectOneAsync(Query.NEW_ORDER_SELECT_STOCK, iWId, iId)
+                    : Futures.transformAsync(previousUpdate,
+                            updated -> selectOneAsync(Query.NEW_ORDER_SELECT_STOCK, iWId, iId), DIRECT);
+            ListenableFuture<ResultSet> stockUpdate = Futures.transformAsync(stockFuture,
+                    stock -> statements.executeAsync(Query.NEW_ORDER_UPDATE_STOCK,
+                            new BigDecimal(getAdjustedQuantity(stock, quantity)),
+                            stock.getDecimal("S_YTD").add(new BigDecimal(quantity)),
+                            stock.getInt("S_ORDER_CNT") + 1,
+                            (iWId != wId) ? stock.getInt("S_REMOTE_CNT") + 1 : stock.getInt("S_REMOTE_CNT"),
+                            iWId, iId), DIRECT);
+            lastStockUpdates.put(stockKey, stockUpdate);
+            stockFutures.add(stockFuture);
+            stockUpdateFutures.add(stockUpdate);
+            itemFutures.add(selectOneAsync(Query.NEW_ORDER_SELECT_ITEM, iId));
         }
 
+        // let O_ENTRY_D = current date and time
+        Date curDate = new Date();
+        BigDecimal olCount = new BigDecimal(itemOrders.size());
+        BigDecimal allLocal = getAllLocal(wId, itemOrders);
+
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        futures.add(customerFuture);
+        futures.add(warehouseTaxFuture);
+        ListenableFuture<Integer> orderIdFuture = Futures.transform(districtFuture,
+                (Function<WarehouseCache.District, Integer>) district -> district.nextOrderId++, DIRECT);
+        futures.add(Futures.transformAsync(orderIdFuture, nextOId -> statements.executeAsync(
+                Query.NEW_ORDER_UPDATE_DISTRICT_NEXT_O_ID, nextOId + 1, wId, dId), DIRECT));
+        futures.add(Futures.transformAsync(orderIdFuture, nextOId -> statements.executeAsync(
+                Query.NEW_ORDER_UPDATE_CUSTOMER_ORDER, nextOId, curDate, null, wId, dId, cId), DIRECT));
+        futures.add(Futures.transformAsync(Futures.allAsList(orderIdFuture, customerFuture), inputs -> {
+            int nextOId = (Integer) inputs.get(0);
+            Row customer = (Row) inputs.get(1);
+            return Futures.allAsList(
+                    statements.executeAsync(Query.NEW_ORDER_INSERT_ORDER_BY_TIMESTAMP,
+                            wId, dId, curDate, nextOId, cId, null, olCount, allLocal,
+                            customer.getString("C_FIRST"), customer.getString("C_MIDDLE"),
+                            customer.getString("C_LAST")),
+                    statements.executeAsync(Query.NEW_ORDER_INSERT_ORDER_BY_ID,
+                            wId, dId, nextOId, cId, curDate, null, olCount, allLocal,
+                            customer.getString("C_FIRST"), customer.getString("C_MIDDLE"),
+                            customer.getString("C_LAST")));
+        }, DIRECT));
+
+        futures.addAll(stockUpdateFutures);
+
+        // all lines are in the partition of the order, inserted by one batch once the order id and all reads are known
+        List<ListenableFuture<?>> lineInputs = new ArrayList<>();
+        lineInputs.add(orderIdFuture);
+        lineInputs.addAll(stockFutures);
+        lineInputs.addAll(itemFutures);
+        futures.add(Futures.transformAsync(Futures.allAsList(lineInputs), ignored -> {
+            List<BoundStatement> orderLines = new ArrayList<>();
+            for (int i = 0; i < itemOrders.size(); i++) {
+                int quantity = itemOrders.get(i).get(2);
+                Row stock = Futures.getUnchecked(stockFutures.get(i));
+                Row item = Futures.getUnchecked(itemFutures.get(i));
+                orderLines.add(bindNewOrderLine(wId, dId, Futures.getUnchecked(orderIdFuture), i,
+                        itemOrders.get(i).get(0), item.getString("I_NAME"),
+                        item.getDecimal("I_PRICE").multiply(new BigDecimal(quantity)), itemOrders.get(i).get(1),
+                        new BigDecimal(quantity), stock.getString(getDistrictStringId(dId))));
+            }
+            return statements.executeBatchAsync(orderLines);
+        }, DIRECT));
+
+        // every read is complete once all writes are done
+        return Futures.transform(Futures.allAsList(futures), (Function<List<Object>, Void>) ignored -> {
+            double totalAmount = 0;
+            for (int i = 0; i < itemOrders.size(); i++) {
+                int quantity = itemOrders.get(i).get(2);
+                Row item = Futures.getUnchecked(itemFutures.get(i));
+                BigDecimal itemAmount = item.getDecimal("I_PRICE").multiply(new BigDecimal(quantity));
+                totalAmount += itemAmount.doubleValue();
+                printOrderLine(itemOrders.get(i).get(0), item.getString("I_NAME"), itemOrders.get(i).get(1),
+                        quantity, itemAmount, getAdjustedQuantity(Futures.getUnchecked(stockFutures.get(i)), quantity));
+            }
+            printOrder(wId, dId, cId, Futures.getUnchecked(customerFuture), Futures.getUnchecked(districtFuture).tax,
+                    Futures.getUnchecked(warehouseTaxFuture), Futures.getUnchecked(orderIdFuture), curDate, olCount,
+                    totalAmount);
+            return null;
+        }, DIRECT);
+    }
+
+    /**
+     * @return tax and next order id of the district, read only once if the warehouse is cached
+     */
+    private WarehouseCache.District getDistrictState(int wId, int dId) {
+        WarehouseCache.District district = (cache != null)
+                ? cache.getDistrict(wId, dId) : new WarehouseCache.District();
+        if (district.nextOrderId == 0) {
+            Row row = getDistrict(wId, dId);
+            district.tax = row.getDecimal("D_TAX");
+            district.nextOrderId = row.getInt("D_NEXT_O_ID");
+        }
+        return district;
+    }
+
+    private ListenableFuture<WarehouseCache.District> getDistrictStateAsync(int wId, int dId) {
+        WarehouseCache.District district = (cache != null)
+                ? cache.getDistrict(wId, dId) : new WarehouseCache.District();
+        if (district.nextOrderId != 0) {
+            return Futures.immediateFuture(district);
+        }
+        return Futures.transform(selectOneAsync(Query.NEW_ORDER_SELECT_DISTRICT, wId, dId),
+                (Function<Row, WarehouseCache.District>) row -> {
+                    district.tax = row.getDecimal("D_TAX");
+                    district.nextOrderId = row.getInt("D_NEXT_O_ID");
+                    return district;
+                }, DIRECT);
+    }
+
+    /**
+     * @return tax of the warehouse, read only once if the warehouse is cached
+     */
+    private BigDecimal getWarehouseTax(int wId) {
+        if (cache == null) {
+            return getWarehouse(wId).getDecimal("W_TAX");
+        }
+        WarehouseCache.Warehouse warehouse = cache.getWarehouse(wId);
+        if (warehouse.tax == null) {
+            warehouse.tax = getWarehouse(wId).getDecimal("W_TAX");
+        }
+        return warehouse.tax;
+    }
+
+    private ListenableFuture<BigDecimal> getWarehouseTaxAsync(int wId) {
+        WarehouseCache.Warehouse warehouse = (cache != null) ? cache.getWarehouse(wId) : null;
+        if (warehouse != null && warehouse.tax != null) {
+            return Futures.immediateFuture(warehouse.tax);
+        }
+        return Futures.transform(selectOneAsync(Query.NEW_ORDER_SELECT_WAREHOUSE, wId),
+                (Function<Row, BigDecimal>) row -> {
+                    BigDecimal tax = row.getDecimal("W_TAX");
+                    if (warehouse != null) {
+                        warehouse.tax = tax;
+                    }
+                    return tax;
+                }, DIRECT);
+    }
+
+    private ListenableFuture<Row> selectOneAsync(Query query, Object... values) {
+        return Futures.transform(statements.readAsync(query, values),
+                (Function<List<Row>, Row>) rows -> rows.isEmpty() ? null : rows.get(0), DIRECT);
+    }
+
+    private BigDecimal getAllLocal(int wId, List<List<Integer>> itemOrders) {
+        BigDecimal allLocal = new BigDecimal(1);
+        for (List<Integer> order : itemOrders) {
+            if (order.get(1) != wId) {
+                allLocal = new BigDecimal(0);
+            }
+        }
+        return allLocal;
+    }
+
+    private double getAdjustedQuantity(Row stock, int quantity) {
+        double adjQuantity = stock.getDecimal("S_QUANTITY").doubleValue() - quantity;
+        while (adjQuantity < 10) {
+            adjQuantity += 100;
+        }
+        return adjQuantity;
+    }
+
+    private void printOrderLine(int iId, String itemName, int iWId, int quantity, BigDecimal itemAmount,
+                                double adjQuantity) {
+        // log
+        System.out.printf(
+                "itemId: %d, itemName: %s, warehouseId: %d, quantity: %d, OL_AMOUNT: %f, S_QUANTITY: %f \n",
+                iId, itemName, iWId, quantity, itemAmount, adjQuantity);
+    }
+
+    private void printOrder(int wId, int dId, int cId, Row customer, BigDecimal districtTax, BigDecimal warehouseTax,
+                            int nextOId, Date curDate, BigDecimal olCount, double totalAmount) {
+        double dTax = districtTax.doubleValue();
+        double wTax = warehouseTax.doubleValue();
         totalAmount = totalAmount * (1 + dTax + wTax) * (1 - customer.getDecimal("C_DISCOUNT").doubleValue());
 
         // log
@@ -168,10 +357,10 @@ class OrderTransaction {
         System.out.printf("Number of items: %d, total amount for order: %f ", olCount.intValue(), totalAmount);
     }
 
-    private void createNewOrderLine(int wId, int dId, int oId, int olNumber, int iId, String iName,
-                                    BigDecimal itemAmount, int supplyWId, BigDecimal quantity, String distInfo) {
-        session.execute(insertOrderLineStmt.bind(
-                wId, dId, oId, olNumber, iId, iName, itemAmount, supplyWId, quantity, distInfo));
+    private BoundStatement bindNewOrderLine(int wId, int dId, int oId, int olNumber, int iId, String iName,
+                                            BigDecimal itemAmount, int supplyWId, BigDecimal quantity, String distInfo) {
+        return statements.bind(Query.NEW_ORDER_INSERT_ORDER_LINE,
+                wId, dId, oId, olNumber, iId, iName, itemAmount, supplyWId, quantity, distInfo);
     }
 
     private String getDistrictStringId(int dId) {
@@ -183,58 +372,49 @@ class OrderTransaction {
     }
 
     private Row selectItem(int iId) {
-        ResultSet resultSet = session.execute(selectItemStmt.bind(iId));
-        List<Row> items = resultSet.all();
+        List<Row> items = statements.read(Query.NEW_ORDER_SELECT_ITEM, iId);
         return (!items.isEmpty()) ? items.get(0) : null;
     }
 
     private void updateStock(Integer wId, Integer iId, BigDecimal adjQuantity,
                              BigDecimal ytd, int orderCount, int remoteCount) {
-        session.execute(updateStockStmt.bind(
-                adjQuantity, ytd, orderCount, remoteCount, wId, iId));
+        statements.execute(Query.NEW_ORDER_UPDATE_STOCK, adjQuantity, ytd, orderCount, remoteCount, wId, iId);
     }
 
     private Row selectStock(Integer wId, Integer iId) {
-        ResultSet resultSet = session.execute(selectStockStmt.bind(wId, iId));
-        List<Row> stocks = resultSet.all();
-        return (!stocks.isEmpty()) ? stocks.get(0) : null;
+        return statements.stream(Query.NEW_ORDER_SELECT_STOCK, wId, iId).one();
     }
 
 
     private void updateCustomerOrder(int nextOId, Date curDate, int wId, int dId, int cId) {
-        session.execute(updateCustomerOrderStmt.bind(
-                nextOId, curDate, null, wId, dId, cId));
+        statements.execute(Query.NEW_ORDER_UPDATE_CUSTOMER_ORDER, nextOId, curDate, null, wId, dId, cId);
     }
 
     private void createNewOrder(int id, int dId, int wId, int cId, Date entryDate, BigDecimal olCount, BigDecimal allLocal,
                                 String cFirst, String cMiddle, String cLast) {
-        session.execute(insertOrderByTimestampStmt.bind(
+        statements.execute(Query.NEW_ORDER_INSERT_ORDER_BY_TIMESTAMP,
                 wId, dId, entryDate, id, cId, null, olCount, allLocal,
-                cFirst, cMiddle, cLast));
-        session.execute(insertOrderByIdStmt.bind(
+                cFirst, cMiddle, cLast);
+        statements.execute(Query.NEW_ORDER_INSERT_ORDER_BY_ID,
                 wId, dId, id, cId, entryDate, null, olCount, allLocal,
-                cFirst, cMiddle, cLast));
+                cFirst, cMiddle, cLast);
     }
 
     private void updateDistrictNextOId(int nextOId, int wId, int dId) {
-        session.execute(updateDistrictNextOIdStmt.bind(nextOId, wId, dId));
+        statements.execute(Query.NEW_ORDER_UPDATE_DISTRICT_NEXT_O_ID, nextOId, wId, dId);
     }
 
     private Row getCustomer(int wId, int dID, int cId) {
-        ResultSet resultSet = session.execute(selectCustomerStmt.bind(wId, dID, cId));
-        List<Row> customers = resultSet.all();
-        return (!customers.isEmpty()) ? customers.get(0) : null;
+        return statements.stream(Query.NEW_ORDER_SELECT_CUSTOMER, wId, dID, cId).one();
     }
 
     private Row getWarehouse(int wId) {
-        ResultSet resultSet = session.execute(selectWarehouseStmt.bind(wId));
-        List<Row> warehouses = resultSet.all();
+        List<Row> warehouses = statements.read(Query.NEW_ORDER_SELECT_WAREHOUSE, wId);
         return (!warehouses.isEmpty()) ? warehouses.get(0) : null;
     }
 
     private Row getDistrict(int wId, int dId) {
-        ResultSet resultSet = session.execute(selectDistrictStmt.bind(wId, dId));
-        List<Row> districts = resultSet.all();
+        List<Row> districts = statements.read(Query.NEW_ORDER_SELECT_DISTRICT, wId, dId);
         return (!districts.isEmpty()) ? districts.get(0) : null;
     }
 }
@@ -1,11 +1,12 @@
 package main.java;
 
-import com.datastax.driver.core.PreparedStatement;
-import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import main.java.StatementRegistry.Query;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.text.SimpleDateFormat;
@@ -23,38 +24,22 @@ import java.text.SimpleDateFormat;
  * 7. Top-Balance Transaction identifies the top-10 customers with the highest outstanding payment balance.
  */
 public class PopularItemTransaction {
-    private PreparedStatement selectLastOrdersStmt;
-    private PreparedStatement selectMaxQuantityStmt;
-    private PreparedStatement selectPopularItemStmt;
-    private PreparedStatement selectOrderWithItemStmt;
 
-    private Session session;
+    private final StatementRegistry statements;
     /* popular items */
-    private static final String SELECT_LAST_ORDERS =
+    // orders of a district are clustered by order id, the last orders are the first ones in descending order
+    static final String SELECT_LAST_ORDERS =
             "SELECT o_id, o_c_id, o_entry_d, o_c_first, o_c_middle, o_c_last "
-                    + "FROM orders_by_timestamp "
+                    + "FROM orders_by_id "
                     + "WHERE o_w_id = ? AND o_d_id = ? "
-                    + "LIMIT ? ALLOW FILTERING;";
-    private static final String SELECT_MAX_QUANTITY =
-            "SELECT MAX(ol_quantity) as ol_quantity "
-                    + "FROM order_lines "
-                    + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ?;";
-    private static final String SELECT_POPULAR_ITEM =
+                    + "ORDER BY o_id DESC LIMIT ?;";
+    static final String SELECT_ORDER_LINES =
             "SELECT ol_i_id, ol_i_name, ol_quantity "
                     + "FROM order_lines "
-                    + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ? AND ol_quantity = ? ALLOW FILTERING;";
-    private static final String SELECT_ORDER_WITH_ITEM =
-            "SELECT * "
-                    + "FROM order_lines "
-                    + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ? AND ol_i_id = ? ALLOW FILTERING;";
-
-    PopularItemTransaction(Session session) {
-        this.session = session;
-        /* popular items */
-        selectLastOrdersStmt = session.prepare(SELECT_LAST_ORDERS);
-        selectMaxQuantityStmt = session.prepare(SELECT_MAX_QUANTITY);
-        selectPopularItemStmt = session.prepare(SELECT_POPULAR_ITEM);
-        selectOrderWithItemStmt = session.prepare(SELECT_ORDER_WITH_ITEM);
+                    + "WHERE ol_w_id = ? AND ol_d_id = ? AND ol_o_id = ?;";
+
+    PopularItemTransaction(StatementRegistry statements) {
+        this.statements = statements;
     }
 
     /* Start of public methods */
@@ -67,49 +52,68 @@ public class PopularItemTransaction {
      */
 
     void popularItem(int wId, int dId, int numOfOrders) {
-        List<Row> lastOrders = selectLastOrders(wId, dId, numOfOrders);
-        int num = lastOrders.size();
-//        List<Row> customers = new List();
-        List<List<Row>> popularItemOfOrder = new ArrayList();
-        List<Integer> popularItems = new ArrayList();
-        List<String> popularItemName = new ArrayList();
-        for (int i = 0; i < num; i++) {
-            int orderId = lastOrders.get(i).getInt("o_id");
-            //System.out.println("order ids " + orderId);
-//            cId = lastOrders.get(i)[1];
-//            customers.add(getCustomer(wId, dId, cId));
-            List<Row>popularItem = getPopularItem(wId, dId, orderId);
-            popularItemOfOrder.add(popularItem);
-            //System.out.println("item ids:");
-            for (Row item: popularItem) {
-                int itemId = item.getInt("ol_i_id");
-                //System.out.println("itemId " + itemId);
-                if (!popularItems.contains(itemId)) {
-                    popularItems.add(itemId);
-                    popularItemName.add(item.getString("ol_i_name"));
+        List<Row> lastOrders = new ArrayList<>();
+        List<List<Row>> orderLines = selectOrderLines(wId, dId, numOfOrders, lastOrders);
+
+        List<List<Row>> popularItemOfOrder = new ArrayList<>();
+        for (List<Row> lines : orderLines) {
+            popularItemOfOrder.add(getPopularItem(lines));
+        }
+
+        // distinct popular item ids, sorted to find the index of an item by binary search
+        int[] popularIds = getDistinctItemIds(popularItemOfOrder);
+        String[] names = new String[popularIds.length];
+        // order of the first appearance of every popular item, as printed
+        int[] printOrder = new int[popularIds.length];
+        int printed = 0;
+        for (List<Row> popularItem : popularItemOfOrder) {
+            for (Row item : popularItem) {
+                int index = Arrays.binarySearch(popularIds, item.getInt("ol_i_id"));
+                if (names[index] == null) {
+                    names[index] = item.getString("ol_i_name");
+                    printOrder[printed++] = index;
                 }
             }
         }
-        int[] percentage = new int[popularItems.size()];
-//        String[] itemName = new String[popularItems.size()]
-        //System.out.println("percentage: " + popularItems.size());
-        for (int i = 0; i < popularItems.size(); i++){
-            int itemId = popularItems.get(i);
-//            orderId = lastOrders.get(i)[0];
-//            itemName[i] = getItemName(itemId);
-            percentage[i] = getPercentage(wId, dId, lastOrders, itemId);
+
+        // number of orders with every popular item, an item is counted once per order
+        int[] counts = new int[popularIds.length];
+        int[] lastCountedOrder = new int[popularIds.length];
+        Arrays.fill(lastCountedOrder, -1);
+        for (int i = 0; i < orderLines.size(); i++) {
+            for (Row line : orderLines.get(i)) {
+                int index = Arrays.binarySearch(popularIds, line.getInt("ol_i_id"));
+                if (index >= 0 && lastCountedOrder[index] != i) {
+                    lastCountedOrder[index] = i;
+                    counts[index]++;
+                }
+            }
+        }
+
+        List<String> popularItemName = new ArrayList<>();
+        int[] percentage = new int[popularIds.length];
+        for (int i = 0; i < printed; i++) {
+            popularItemName.add(names[printOrder[i]]);
+            percentage[i] = counts[printOrder[i]];
         }
-        outputPopularItems(wId, dId, numOfOrders, lastOrders, popularItemOfOrder,
-                popularItemName, percentage);
+        outputPopularItems(wId, dId, lastOrders, popularItemOfOrder, popularItemName, percentage);
     }
 
 
     /*  End of public methods */
     /*  popular items */
-    private List<Row> selectLastOrders(final int wId, final int dId, final int numOfOrders) {
-        ResultSet resultSet = session.execute(selectLastOrdersStmt.bind(wId, dId, numOfOrders));
-        List<Row> lastOrders = resultSet.all();
-        return lastOrders;
+    /**
+     * Read the last orders into lastOrders and the order lines of all of them concurrently,
+     * one partition read per order, sent as soon as the order is read.
+     */
+    private List<List<Row>> selectOrderLines(final int wId, final int dId, final int numOfOrders,
+                                             final List<Row> lastOrders) {
+        List<ListenableFuture<List<Row>>> futures = new ArrayList<>();
+        for (Row order : statements.stream(Query.POPULAR_ITEM_SELECT_LAST_ORDERS, wId, dId, numOfOrders)) {
+            lastOrders.add(order);
+            futures.add(statements.readAsync(Query.POPULAR_ITEM_SELECT_ORDER_LINES, wId, dId, order.getInt("o_id")));
+        }
+        return Futures.getUnchecked(Futures.allAsList(futures));
     }
 
 //    private void getCustomer(final int wId, final int dId, final int cId) {
@@ -121,39 +125,57 @@ public class PopularItemTransaction {
 //        }
 //    }
 
-    private List<Row> getPopularItem(final int wId, final int dId, final int orderId) {
-        ResultSet resultSet1 = session.execute(selectMaxQuantityStmt.bind(wId, dId, orderId));
-        BigDecimal maxQuantity= (resultSet1.all()).get(0).getDecimal("ol_quantity");
-
-        ResultSet resultSet2 = session.execute(selectPopularItemStmt.bind(wId, dId, orderId, maxQuantity));
-        List<Row> popularItem = resultSet2.all();
+    // order lines with the largest quantity of the order
+    private List<Row> getPopularItem(final List<Row> orderLines) {
+        BigDecimal maxQuantity = null;
+        for (Row line : orderLines) {
+            BigDecimal quantity = line.getDecimal("ol_quantity");
+            if (maxQuantity == null || quantity.compareTo(maxQuantity) > 0) {
+                maxQuantity = quantity;
+            }
+        }
+        List<Row> popularItem = new ArrayList<>();
+        for (Row line : orderLines) {
+            if (line.getDecimal("ol_quantity").compareTo(maxQuantity) == 0) {
+                popularItem.add(line);
+            }
+        }
         return popularItem;
     }
 
+    private int[] getDistinctItemIds(final List<List<Row>> items) {
+        int size = 0;
+        for (List<Row> rows : items) {
+            size += rows.size();
+        }
+        int[] ids = new int[size];
+        int i = 0;
+        for (List<Row> rows : items) {
+            for (Row row : rows) {
+                ids[i++] = row.getInt("ol_i_id");
+            }
+        }
+        Arrays.sort(ids);
+
+        int distinct = 0;
+        for (int j = 0; j < ids.length; j++) {
+            if (j == 0 || ids[j] != ids[j - 1]) {
+                ids[distinct++] = ids[j];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
+
 //    private void getItemName(final int itemId){
 //        ResultSet resultSet = session.execute(selectItemName.bind(itemId);
 //        List<Row> itemName = resultSet.all();
 //        return itemName.get(0);
 //    }
 
-    private int getPercentage(final int wId, final int dId, final List<Row> lastOrders, final int itemId) {
-        int count = 0;
-        for (int i = 0; i < lastOrders.size(); i++) {
-            int orderId = lastOrders.get(i).getInt("o_id");
-            ResultSet resultSet = session.execute(selectOrderWithItemStmt.bind(wId, dId, orderId, itemId));
-            List<Row> result = resultSet.all();
-            if (!result.isEmpty()){
-                count++;
-            }
-        }
-        //System.out.println("getPercentage");
-        //System.out.println(count);
-        return count;
-
-    }
-
-    private void outputPopularItems(final int wId, final int dId, final int numOfOrders, List<Row> lastOrders,
+    private void outputPopularItems(final int wId, final int dId, List<Row> lastOrders,
                                     List<List<Row>> popularItemOfOrder, List<String> popularItemName, int[] percentage){
+        // fewer orders than asked for if the district has fewer
+        int numOfOrders = lastOrders.size();
         System.out.println("WId: " + wId + " DId: " + dId);
         System.out.println("number of orders been examined: " + numOfOrders);
         for (int i = 0; i < numOfOrders; i++) {
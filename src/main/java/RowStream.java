@@ -0,0 +1,92 @@
+package main.java;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Rows of a query consumed one at a time, without keeping them in memory:
+ * once only prefetchThreshold rows of the current page are left, the next page is fetched in the background,
+ * so it usually arrives before the current page is consumed.
+ * A stream can only be consumed once, like the {@link ResultSet} it reads.
+ */
+class RowStream implements Iterable<Row> {
+    private final ResultSet resultSet;
+    private final int prefetchThreshold;
+
+    /**
+     * @param prefetchThreshold : rows left in the current page when the next page is fetched
+     */
+    RowStream(ResultSet resultSet, int prefetchThreshold) {
+        this.resultSet = resultSet;
+        this.prefetchThreshold = Math.max(1, prefetchThreshold);
+    }
+
+    /**
+     * @return the first row, null if there is none
+     */
+    Row one() {
+        return resultSet.one();
+    }
+
+    /**
+     * Combine all rows into one value, starting with initial.
+     */
+    <A> A fold(A initial, BiFunction<A, Row, A> accumulator) {
+        A value = initial;
+        for (Row row : this) {
+            value = accumulator.apply(value, row);
+        }
+        return value;
+    }
+
+    /**
+     * @return the k largest values mapped from the rows, largest first, keeping only k values in memory
+     */
+    <T> List<T> topK(int k, Function<Row, T> mapper, Comparator<? super T> comparator) {
+        PriorityQueue<T> smallestFirst = new PriorityQueue<>(Math.max(1, k), comparator);
+        for (Row row : this) {
+            T value = mapper.apply(row);
+            if (smallestFirst.size() < k) {
+                smallestFirst.add(value);
+            } else if (k > 0 && comparator.compare(value, smallestFirst.peek()) > 0) {
+                smallestFirst.poll();
+                smallestFirst.add(value);
+            }
+        }
+        List<T> top = new ArrayList<>(smallestFirst);
+        top.sort(Collections.reverseOrder(comparator));
+        return top;
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return !resultSet.isExhausted();
+            }
+
+            @Override
+            public Row next() {
+                if (resultSet.getAvailableWithoutFetching() == prefetchThreshold && !resultSet.isFullyFetched()) {
+                    resultSet.fetchMoreResults();
+                }
+                Row row = resultSet.one();
+                if (row == null) {
+                    throw new NoSuchElementException();
+                }
+                return row;
+            }
+        };
+    }
+}
@@ -3,13 +3,18 @@ package main.java;
 import com.datastax.driver.core.*;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Set up the keyspace and schema for cassandra project.
@@ -18,9 +23,39 @@ import java.util.*;
 class Setup {
     static final String[] CONTACT_POINTS;
     static final String KEY_SPACE;
+    private static final Map<String, String> CONFIG;
 
     private static final String CONTACT_POINT_KEY = "CONTACT_POINTS";
     private static final String KEY_SPACE_KEY = "KEY_SPACE";
+    private static final String LOAD_MODE_KEY = "LOAD_MODE";
+    static final String LOAD_CONCURRENCY_KEY = "LOAD_CONCURRENCY";
+    private static final String LOAD_PARSER_THREADS_KEY = "LOAD_PARSER_THREADS";
+    static final String LOAD_BATCH_SIZE_KEY = "LOAD_BATCH_SIZE";
+    private static final String SSTABLE_DIR_KEY = "SSTABLE_DIR";
+    private static final String LOAD_RESUME_KEY = "LOAD_RESUME";
+    private static final String LOAD_CHECKPOINT_KEY = "LOAD_CHECKPOINT";
+    private static final String LOAD_PROGRESS_INTERVAL_KEY = "LOAD_PROGRESS_INTERVAL";
+    private static final String SSTABLE_BUFFER_MB_KEY = "SSTABLE_BUFFER_MB";
+    private static final String JOIN_MODE_KEY = "JOIN_MODE";
+    private static final String JOIN_MEMORY_MB_KEY = "JOIN_MEMORY_MB";
+    private static final String JOIN_SPILL_DIR_KEY = "JOIN_SPILL_DIR";
+
+    // "sync" loads one table after another with a single write in flight,
+    // "async" loads independent tables concurrently with LOAD_CONCURRENCY writes in flight per table
+    private static final String LOAD_MODE_SYNC = "sync";
+    private static final String LOAD_MODE_ASYNC = "async";
+    // "sstable" writes SSTables of every table to SSTABLE_DIR without connecting to any node
+    private static final String LOAD_MODE_SSTABLE = "sstable";
+    private static final String SSTABLE_WRITER_CLASS = "main.java.OfflineTableWriter";
+    static final int DEFAULT_LOAD_CONCURRENCY = 128;
+
+    // "memory" joins customers and orders with in-memory maps,
+    // "streaming" sorts both files by (W_ID, D_ID, C_ID) within JOIN_MEMORY_MB and merges them
+    private static final String JOIN_MODE_STREAMING = "streaming";
+    private static final int DEFAULT_JOIN_MEMORY_MB = 256;
+    private static final int INITIAL_INDEX_SIZE = 1 << 16;
+    // checkpoint name of customers, orders_by_timestamp and orders_by_id, which are loaded as one unit
+    private static final String CUSTOMERS_AND_ORDERS = "customers_and_orders";
 
     static {
         Map<String, String> configMap = new HashMap<>();
@@ -30,16 +65,12 @@ class Setup {
             BufferedReader bf = new BufferedReader(fr);
 
             while ((line = bf.readLine()) != null) {
-                String[] lineData =line.split("=");
-                switch (lineData[0]) {
-                    case CONTACT_POINT_KEY:
-                        configMap.put(CONTACT_POINT_KEY, lineData[1].trim());
-                        break;
-                    case KEY_SPACE_KEY:
-                        configMap.put(KEY_SPACE_KEY, lineData[1].trim());
-                        break;
-                    default:
-                        // do nothing
+                if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                String[] lineData =line.split("=", 2);
+                if (lineData.length == 2) {
+                    configMap.put(lineData[0].trim(), lineData[1].trim());
                 }
             }
         } catch (IOException e) {
@@ -49,30 +80,78 @@ class Setup {
         for (int i = 0; i < trimedIP.length; i++) {
             trimedIP[i] = trimedIP[i].trim();
         }
+        CONFIG = configMap;
         CONTACT_POINTS = trimedIP;
         KEY_SPACE = configMap.get(KEY_SPACE_KEY);
     }
 
-    private static final DateFormat DF = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    /**
+     * Look up an optional value from config.env.
+     * @param key : config key
+     * @param defaultValue : value to use when the key is absent
+     */
+    static String getConfig(String key, String defaultValue) {
+        String value = CONFIG.get(key);
+        return (value == null || value.isEmpty()) ? defaultValue : value;
+    }
+
+    static int getIntConfig(String key, int defaultValue) {
+        return Integer.parseInt(getConfig(key, String.valueOf(defaultValue)));
+    }
 
     private Session session;
+    private final CsvParser csvParser = new CsvParser(
+            getIntConfig(LOAD_PARSER_THREADS_KEY, Runtime.getRuntime().availableProcessors()));
+    private final LoadCheckpoint checkpoint =
+            new LoadCheckpoint(new File(getConfig(LOAD_CHECKPOINT_KEY, "load.checkpoint")));
+    private LoadProgress progress;
 
     public static void main(String[] args) {
         Setup s = new Setup();
-        s.run();
+        try {
+            s.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
     }
 
     private void run() {
-        Cluster cluster = Cluster.builder()
-                .addContactPoints(CONTACT_POINTS)
-                .build();
-        session = cluster.connect();
+        progress = new LoadProgress(getIntConfig(LOAD_PROGRESS_INTERVAL_KEY, 30));
+        try {
+            if (isLoadMode(LOAD_MODE_SSTABLE)) {
+                // offline: schema is only used locally by the SSTable writers, SSTables are always rewritten
+                checkpoint.reset();
+                loadDataConcurrently();
+                System.out.println("All SSTables are written to folder : "
+                        + new File(getConfig(SSTABLE_DIR_KEY, "sstables"), KEY_SPACE).getPath());
+                return;
+            }
 
-        dropOldKeySpace();
-        createKeySpace();
-        createSchema();
-        createView();
-        loadData();
+            Cluster cluster = Cluster.builder()
+                    .addContactPoints(CONTACT_POINTS)
+                    .build();
+            try {
+                session = cluster.connect();
+
+                if (Boolean.parseBoolean(getConfig(LOAD_RESUME_KEY, "false")) && checkpoint.exists()) {
+                    // keep key space and data of the interrupted load
+                    checkpoint.load();
+                    System.out.println("Resume loading data from checkpoint.");
+                } else {
+                    dropOldKeySpace();
+                    createKeySpace();
+                    createSchema();
+                    createView();
+                    checkpoint.reset();
+                }
+                loadData();
+            } finally {
+                cluster.close();
+            }
+        } finally {
+            progress.close();
+        }
     }
 
     private void dropOldKeySpace() {
@@ -90,6 +169,18 @@ class Setup {
     }
 
     private void createSchema() {
+        for (Map.Entry<String, String> schema : getTableSchemas().entrySet()) {
+            session.execute(schema.getValue());
+            System.out.println("Successfully created table : " + schema.getKey());
+        }
+
+        System.out.println("All tables are created successfully.");
+    }
+
+    /**
+     * @return CREATE TABLE command of every table, keyed by table name in creation order
+     */
+    static Map<String, String> getTableSchemas() {
         String createWarehousesCmd = "CREATE TABLE " + KEY_SPACE + ".warehouses ("
                 + " W_ID int, "
                 + " W_NAME text, "
@@ -214,42 +305,132 @@ class Setup {
                 + " PRIMARY KEY (S_W_ID, S_I_ID) "
                 + " );";
 
-        session.execute(createWarehousesCmd);
-        System.out.println("Successfully created table : warehouses");
-        session.execute(createDistrictsCmd);
-        System.out.println("Successfully created table : districts");
-        session.execute(createCustomersCmd);
-        System.out.println("Successfully created table : customers");
-        session.execute(createOrdersByTimestampCmd);
-        System.out.println("Successfully created table : orders_by_timestamp");
-        session.execute(createOrdersByIdCmd);
-        System.out.println("Successfully created table : orders_by_id");
-        session.execute(createItemsCmd);
-        System.out.println("Successfully created table : items");
-        session.execute(createOrderLinesCmd);
-        System.out.println("Successfully created table : order_lines");
-        session.execute(createStocksCmd);
-        System.out.println("Successfully created table : stocks");
+        Map<String, String> schemas = new LinkedHashMap<>();
+        schemas.put("warehouses", createWarehousesCmd);
+        schemas.put("districts", createDistrictsCmd);
+        schemas.put("customers", createCustomersCmd);
+        schemas.put("orders_by_timestamp", createOrdersByTimestampCmd);
+        schemas.put("orders_by_id", createOrdersByIdCmd);
+        schemas.put("items", createItemsCmd);
+        schemas.put("order_lines", createOrderLinesCmd);
+        schemas.put("stocks", createStocksCmd);
+        return schemas;
+    }
 
-        System.out.println("All tables are created successfully.");
+    private static boolean isLoadMode(String mode) {
+        return getConfig(LOAD_MODE_KEY, LOAD_MODE_SYNC).equalsIgnoreCase(mode);
     }
 
     private void loadData() {
-        loadWarehouse();
-        loadDistricts();
-        loadCustomerAndOrder();
-        loadItemsAndOrderLines();
-        loadStock();
+        if (isLoadMode(LOAD_MODE_ASYNC)) {
+            loadDataConcurrently();
+        } else {
+            loadWarehouse();
+            loadDistricts();
+            loadCustomerAndOrder();
+            loadItemsAndOrderLines();
+            loadStock();
+        }
         System.out.println("All data are loaded successfully.");
     }
 
+    // tables that do not depend on each other are loaded in parallel,
+    // the first failure cancels the remaining loaders
+    private void loadDataConcurrently() {
+        List<Runnable> loaders = Arrays.asList(
+                this::loadWarehouse,
+                this::loadDistricts,
+                this::loadCustomerAndOrder,
+                this::loadItemsAndOrderLines,
+                this::loadStock);
+        ExecutorService executor = Executors.newFixedThreadPool(loaders.size());
+        List<Future<?>> futures = new ArrayList<>();
+        for (Runnable loader : loaders) {
+            futures.add(executor.submit(loader));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Load data interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load data failed with error : " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TableWriter newWriter(String table, String insertCmd) {
+        if (isLoadMode(LOAD_MODE_SSTABLE)) {
+            return newOfflineWriter(table, insertCmd);
+        }
+        int concurrency = 1;
+        if (isLoadMode(LOAD_MODE_ASYNC)) {
+            concurrency = getIntConfig(LOAD_CONCURRENCY_KEY, DEFAULT_LOAD_CONCURRENCY);
+        }
+        return new BulkWriter(session, table, insertCmd, concurrency, getIntConfig(LOAD_BATCH_SIZE_KEY, 1));
+    }
+
+    /**
+     * Load one data file into a table, starting from the offset recorded in the checkpoint.
+     * Progress is checkpointed after every wave of parsed chunks once its rows are written,
+     * a table that is already done is skipped.
+     */
+    private void loadFile(String table, String path, TableWriter writer, CsvParser.RowHandler handler)
+            throws IOException {
+        if (checkpoint.isDone(table)) {
+            System.out.println("Skip loading data for table : " + table + ", already loaded.");
+            return;
+        }
+        // SSTables are only complete once the writer is closed, so there is nothing to resume from
+        boolean resumable = !isLoadMode(LOAD_MODE_SSTABLE);
+        long startOffset = checkpoint.getOffset(table);
+        System.out.println("Start loading data for table : " + table
+                + ((startOffset > 0) ? " from offset " + startOffset : ""));
+
+        LoadProgress.Entry entry = progress.track(table, writer, new File(path).length(), startOffset);
+        try {
+            csvParser.parse(path, startOffset, handler, offset -> {
+                if (resumable) {
+                    writer.flush();
+                    checkpoint.update(table, offset);
+                }
+                entry.setOffset(offset);
+            });
+            writer.close();
+        } finally {
+            entry.finish();
+        }
+        checkpoint.markDone(table);
+    }
+
+    // the SSTable writer needs cassandra-all, which is only on the classpath when built with -Psstable
+    private TableWriter newOfflineWriter(String table, String insertCmd) {
+        File outputDir = new File(new File(getConfig(SSTABLE_DIR_KEY, "sstables"), KEY_SPACE), table);
+        try {
+            return (TableWriter) Class.forName(SSTABLE_WRITER_CLASS)
+                    .getDeclaredConstructor(String.class, String.class, String.class, File.class, int.class)
+                    .newInstance(table, getTableSchemas().get(table), insertCmd, outputDir,
+                            getIntConfig(SSTABLE_BUFFER_MB_KEY, 64));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("LOAD_MODE=sstable requires the project to be built with -Psstable.", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Create SSTable writer for table " + table + " failed with error : "
+                    + e.getMessage(), e);
+        }
+    }
+
     private void createView() {
         String createViewCmd = "CREATE MATERIALIZED VIEW " + KEY_SPACE + ".customers_balances AS "
                 + " SELECT C_ID from " + KEY_SPACE + ".customers "
                 + " WHERE C_W_ID IS NOT NULL AND C_D_ID IS NOT NULL AND C_ID IS NOT NULL "
                 + " AND C_BALANCE IS NOT NULL "
-                + " PRIMARY KEY (C_BALANCE, C_W_ID, C_D_ID, C_ID)"
-                + " WITH CLUSTERING ORDER BY (C_BALANCE DESC)";
+                // one partition per district, balances in descending order, so the top balances are its first rows
+                + " PRIMARY KEY ((C_W_ID, C_D_ID), C_BALANCE, C_ID)"
+                + " WITH CLUSTERING ORDER BY (C_BALANCE DESC, C_ID ASC)";
         session.execute(createViewCmd);
         System.out.println("Successfully created materialized view : customers_balances");
     }
@@ -260,30 +441,18 @@ class Setup {
                 + " S_DIST_01, S_DIST_02, S_DIST_03, S_DIST_04, S_DIST_05, "
                 + " S_DIST_06, S_DIST_07, S_DIST_08, S_DIST_09, S_DIST_10, S_DATA ) "
                 + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-        PreparedStatement insertStockStmt = session.prepare(insertStocksCmd);
-        String line;
-        String[] lineData;
+        TableWriter stockWriter = newWriter("stocks", insertStocksCmd);
 
         try {
-            System.out.println("Start loading data for table : stocks");
-            FileReader fr = new FileReader("data/stock.csv");
-            BufferedReader bf = new BufferedReader(fr);
-
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-                BoundStatement bound = insertStockStmt.bind(
-                        Integer.parseInt(lineData[0]), Integer.parseInt(lineData[1]),
-                        new BigDecimal(lineData[2]), new BigDecimal(lineData[3]),
-                        Integer.parseInt(lineData[4]), Integer.parseInt(lineData[5]),
-                        lineData[6], lineData[7], lineData[8], lineData[9], lineData[10],
-                        lineData[11], lineData[12], lineData[13], lineData[14], lineData[15],
-                        lineData[16]);
-                session.execute(bound);
-            }
-
-            System.out.println("Successfully loaded all data for table : stocks ");
+            loadFile("stocks", "data/stock.csv", stockWriter, row -> stockWriter.insert(
+                    row.getInt(0), row.getInt(1),
+                    row.getDecimal(2), row.getDecimal(3),
+                    row.getInt(4), row.getInt(5),
+                    row.getString(6), row.getString(7), row.getString(8), row.getString(9), row.getString(10),
+                    row.getString(11), row.getString(12), row.getString(13), row.getString(14), row.getString(15),
+                    row.getString(16)));
         } catch (IOException e) {
-            System.out.println("Load data failed with error : " + e.getMessage());
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
         }
     }
 
@@ -295,64 +464,40 @@ class Setup {
         String insertItemsCmd = "INSERT INTO " + KEY_SPACE + ".items ("
                 + " I_ID, I_NAME, I_PRICE, I_IM_ID, I_DATA ) "
                 + " VALUES (?, ?, ?, ?, ?); ";
-        PreparedStatement insertOrderLinesStmt = session.prepare(insertOrderLinesCmd);
-        PreparedStatement insertItemStmt = session.prepare(insertItemsCmd);
+        TableWriter orderLineWriter = newWriter("order_lines", insertOrderLinesCmd);
+        TableWriter itemWriter = newWriter("items", insertItemsCmd);
 
-        FileReader fr;
-        BufferedReader bf;
-        String line;
-        String[] lineData;
-        Map<Integer, String> hm = new HashMap<>();
+        NameIndex itemNames = new NameIndex(1, INITIAL_INDEX_SIZE);
 
         try {
-            System.out.println("Start loading data for table : items");
-            fr = new FileReader("data/item.csv");
-            bf = new BufferedReader(fr);
-
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-                int itemId = Integer.parseInt(lineData[0]);
-                String itemName = lineData[1];
-                hm.put(itemId, itemName);
-                BoundStatement bound = insertItemStmt.bind(
-                        itemId, itemName, new BigDecimal(lineData[2]),
-                        Integer.parseInt(lineData[3]), lineData[4]);
-                session.execute(bound);
-            }
-            System.out.println("Successfully loaded all data for table : items ");
-
-            System.out.println("Start loading data for table : order_lines");
-            fr = new FileReader("data/order-line.csv");
-            bf = new BufferedReader(fr);
-
-            while ((line = bf.readLine()) != null) {
-                lineData =line.split(",");
-                Date date;
-                if (lineData[5].equals("null")) {
-                    date = null;
-                } else {
-                    date = DF.parse(lineData[5]);
-                }
-                int itemId = Integer.parseInt(lineData[4]);
-                BoundStatement bound = insertOrderLinesStmt.bind(
-                        Integer.parseInt(lineData[0]), Integer.parseInt(lineData[1]), Integer.parseInt(lineData[2]),
-                        Integer.parseInt(lineData[3]), itemId, hm.get(itemId),
-                        date, new BigDecimal(lineData[6]),
-                        Integer.parseInt(lineData[7]), new BigDecimal(lineData[8]), lineData[9]);
-                if (date == null) {
-                    bound.unset(5 /* don't set date if null */);
-                }
-                session.execute(bound);
-            }
-
-            System.out.println("Successfully loaded all data for table : order_lines ");
-        } catch (IOException | ParseException e) {
-            System.out.println("Load data failed with error : " + e.getMessage());
+            // names are needed by order_lines even if items are loaded already
+            csvParser.parse("data/item.csv", row -> itemNames.put(row.getInt(0), row.getString(1)));
+            loadFile("items", "data/item.csv", itemWriter, row -> itemWriter.insert(
+                    row.getInt(0), row.getString(1), row.getDecimal(2),
+                    row.getInt(3), row.getString(4)));
+
+            loadFile("order_lines", "data/order-line.csv", orderLineWriter, row -> {
+                int itemId = row.getInt(4);
+                int item = itemNames.find(itemId);
+                // null date is left unset by the writer
+                orderLineWriter.insert(
+                        row.getInt(0), row.getInt(1), row.getInt(2),
+                        row.getInt(3), itemId, (item < 0) ? null : itemNames.get(item, 0),
+                        row.getTimestamp(5), row.getDecimal(6),
+                        row.getInt(7), row.getDecimal(8), row.getString(9));
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
         }
     }
 
     // load order and customer together as customer make use of data from order file
     private void loadCustomerAndOrder() {
+        if (checkpoint.isDone(CUSTOMERS_AND_ORDERS)) {
+            System.out.println("Skip loading data for table : customers, orders_by_timestamp and orders_by_id, "
+                    + "already loaded.");
+            return;
+        }
         String insertCustomerCmd = "INSERT INTO " + KEY_SPACE + ".customers ("
                 + " C_W_ID, C_D_ID, C_ID, C_FIRST, C_MIDDLE, C_LAST, C_STREET_1, C_STREET_2,"
                 + " C_CITY, C_STATE, C_ZIP, C_PHONE, C_SINCE, C_CREDIT, C_CREDIT_LIM,"
@@ -371,132 +516,261 @@ class Setup {
                 + " O_ENTRY_D, O_CARRIER_ID, O_OL_CNT, O_ALL_LOCAL, "
                 + " O_C_FIRST, O_C_MIDDLE, O_C_LAST ) "
                 + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-        PreparedStatement insertCustomerStmt = session.prepare(insertCustomerCmd);
-        PreparedStatement insertOrderByTimestampStmt = session.prepare(insertOrdersByTimestampCmd);
-        PreparedStatement insertOrderByIdStmt = session.prepare(insertOrdersByIdCmd);
+        TableWriter customerWriter = newWriter("customers", insertCustomerCmd);
+        TableWriter orderByTimestampWriter = newWriter("orders_by_timestamp", insertOrdersByTimestampCmd);
+        TableWriter orderByIdWriter = newWriter("orders_by_id", insertOrdersByIdCmd);
+        List<LoadProgress.Entry> entries = Arrays.asList(
+                progress.track("customers", customerWriter, 0, 0),
+                progress.track("orders_by_timestamp", orderByTimestampWriter, 0, 0),
+                progress.track("orders_by_id", orderByIdWriter, 0, 0));
 
-        FileReader fr;
-        BufferedReader bf;
-        String line;
-        Set<Order> orderSet = new HashSet<>();
-        Map<Integer, Triple<Integer, Date, Integer>> orderMap = new HashMap<>();
-        Map<Integer, Triple<String, String, String>> customerMap = new HashMap<>();
+        try {
+            if (getConfig(JOIN_MODE_KEY, "memory").equalsIgnoreCase(JOIN_MODE_STREAMING)) {
+                joinCustomerAndOrder(customerWriter, orderByTimestampWriter, orderByIdWriter);
+            } else {
+                loadCustomerAndOrder(customerWriter, orderByTimestampWriter, orderByIdWriter);
+            }
+        } finally {
+            for (LoadProgress.Entry entry : entries) {
+                entry.finish();
+            }
+        }
+        checkpoint.markDone(CUSTOMERS_AND_ORDERS);
+    }
+
+    private void loadCustomerAndOrder(TableWriter customerWriter, TableWriter orderByTimestampWriter,
+                                      TableWriter orderByIdWriter) {
+
+        Queue<Order> orders = new ConcurrentLinkedQueue<>();
+        // both keyed by packed (W_ID, D_ID, C_ID)
+        LastOrderIndex lastOrders = new LastOrderIndex(INITIAL_INDEX_SIZE);
+        NameIndex customerNames = new NameIndex(3, INITIAL_INDEX_SIZE);
 
         try {
             // load order data
             System.out.println("Read data from order file.");
-            fr = new FileReader("data/order.csv");
-            bf = new BufferedReader(fr);
-            String[] lineData;
-
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-
-                // set <C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID> map
-                int orderId = Integer.parseInt(lineData[2]);
-                int customerId = Integer.parseInt(lineData[3]);
-                Date entryDate = DF.parse(lineData[7]);
+            csvParser.parse("data/order.csv", row -> {
+                // set <C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID> index
+                int warehouseId = row.getInt(0);
+                int districtId = row.getInt(1);
+                int orderId = row.getInt(2);
+                int customerId = row.getInt(3);
+                Date entryDate = row.getTimestamp(7);
                 int carrierId = -1; // default value -1 to indicate null
-                if (!lineData[4].equals("null")) {
-                    carrierId = Integer.parseInt(lineData[4]);
-                }
-                if (!orderMap.containsKey(customerId)) {
-                    orderMap.put(customerId, new Triple<>(orderId, entryDate, carrierId));
-                } else if (orderMap.get(customerId).first < orderId) {
-                    orderMap.put(customerId, new Triple<>(orderId, entryDate, carrierId));
+                if (!row.isNull(4)) {
+                    carrierId = row.getInt(4);
                 }
+                lastOrders.update(CompositeKey.pack(warehouseId, districtId, customerId),
+                        orderId, entryDate, carrierId);
 
                 // save locally first, later load into DB
                 Order curOrder = (new Order())
-                        .setWId(Integer.parseInt(lineData[0]))
-                        .setDId(Integer.parseInt(lineData[1]))
+                        .setWId(warehouseId)
+                        .setDId(districtId)
                         .setEntryDate(entryDate)
                         .setId(orderId)
                         .setCId(customerId)
                         .setCarrierId(carrierId)
-                        .setOlCnt(new BigDecimal(lineData[5]))
-                        .setAllLocal(new BigDecimal(lineData[6]));
-                orderSet.add(curOrder);
-            }
+                        .setOlCnt(row.getDecimal(5))
+                        .setAllLocal(row.getDecimal(6));
+                orders.add(curOrder);
+            });
             System.out.println("Successfully loaded all data from order file.");
 
             // load customer
             System.out.println("Start loading data for table : customers");
-            fr = new FileReader("data/customer.csv");
-            bf = new BufferedReader(fr);
-
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-
-                int customerId = Integer.parseInt(lineData[2]);
-                String firstName = lineData[3];
-                String middleName = lineData[4];
-                String lastName = lineData[5];
-                customerMap.put(customerId, new Triple<>(firstName, middleName, lastName));
-
-                // retrieve <C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID> triple
-                Triple triple = orderMap.get(customerId);
-                BoundStatement bound = insertCustomerStmt.bind(
-                        Integer.parseInt(lineData[0]), Integer.parseInt(lineData[1]), customerId,
-                        firstName, middleName, lastName, lineData[6], lineData[7],
-                        lineData[8], lineData[9], lineData[10], lineData[11],
-                        DF.parse(lineData[12]), lineData[13],
-                        new BigDecimal(lineData[14]), new BigDecimal(lineData[15]), new BigDecimal(lineData[16]),
-                        Float.parseFloat(lineData[17]), Integer.parseInt(lineData[18]), Integer.parseInt(lineData[19]),
-                        lineData[20], triple.first, triple.second, triple.third);
-                session.execute(bound);
-            }
-            System.out.println("Successfully loaded all data for table : customers ");
+            csvParser.parse("data/customer.csv", row -> {
+                int warehouseId = row.getInt(0);
+                int districtId = row.getInt(1);
+                int customerId = row.getInt(2);
+                long customerKey = CompositeKey.pack(warehouseId, districtId, customerId);
+                String firstName = row.getString(3);
+                String middleName = row.getString(4);
+                String lastName = row.getString(5);
+                customerNames.put(customerKey, firstName, middleName, lastName);
+
+                // retrieve <C_LAST_ORDER, C_ENTRY_D, C_CARRIER_ID>, unset if customer has no order
+                int lastOrder = lastOrders.find(customerKey);
+                customerWriter.insert(
+                        warehouseId, districtId, customerId,
+                        firstName, middleName, lastName, row.getString(6), row.getString(7),
+                        row.getString(8), row.getString(9), row.getString(10), row.getString(11),
+                        row.getTimestamp(12), row.getString(13),
+                        row.getDecimal(14), row.getDecimal(15), row.getDecimal(16),
+                        row.getFloat(17), row.getInt(18), row.getInt(19),
+                        row.getString(20),
+                        (lastOrder < 0) ? null : lastOrders.getOrderId(lastOrder),
+                        (lastOrder < 0) ? null : lastOrders.getEntryDate(lastOrder),
+                        (lastOrder < 0) ? null : lastOrders.getCarrierId(lastOrder));
+            });
+            customerWriter.close();
 
             // load order data into DB
             System.out.println("Start loading data for table : orders_by_timestamp and orders_by_id");
-            for (Order order : orderSet) {
-                Triple triple = customerMap.get(order.cId);
+            for (Order order : orders) {
+                int customer = customerNames.find(CompositeKey.pack(order.wId, order.dId, order.cId));
+                if (customer >= 0) {
+                    order.setCFirst(customerNames.get(customer, 0))
+                            .setCMiddle(customerNames.get(customer, 1))
+                            .setCLast(customerNames.get(customer, 2));
+                }
 
-                BoundStatement boundByTimestamp = insertOrderByTimestampStmt.bind(
+                orderByTimestampWriter.insert(
                         order.wId, order.dId, order.entryDate, order.id,
                         order.cId, order.carrierId, order.olCnt, order.allLocal,
-                        triple.first, triple.second, triple.third);
-                BoundStatement boundById = insertOrderByIdStmt.bind(
+                        order.cFirst, order.cMiddle, order.cLast);
+                orderByIdWriter.insert(
                         order.wId, order.dId, order.id, order.cId,
                         order.entryDate, order.carrierId, order.olCnt, order.allLocal,
-                        triple.first, triple.second, triple.third);
-                session.execute(boundByTimestamp);
-                session.execute(boundById);
+                        order.cFirst, order.cMiddle, order.cLast);
+            }
+            orderByTimestampWriter.close();
+            orderByIdWriter.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streaming variant of loadCustomerAndOrder.
+     * Both files are sorted by (W_ID, D_ID, C_ID) with spill to disk, then merged in one pass,
+     * so only the orders of a single customer are held in memory while joining.
+     */
+    private void joinCustomerAndOrder(TableWriter customerWriter, TableWriter orderByTimestampWriter,
+                                      TableWriter orderByIdWriter) {
+        // half of the memory budget for each sorter, the merge itself needs very little
+        long memoryLimit = getIntConfig(JOIN_MEMORY_MB_KEY, DEFAULT_JOIN_MEMORY_MB) * 1024L * 1024L / 2;
+        File spillDir = new File(getConfig(JOIN_SPILL_DIR_KEY, System.getProperty("java.io.tmpdir")));
+        ExternalSorter orderSorter = new ExternalSorter("order", spillDir, memoryLimit);
+        ExternalSorter customerSorter = new ExternalSorter("customer", spillDir, memoryLimit);
+
+        try {
+            System.out.println("Sort data from order and customer file.");
+            csvParser.parse("data/order.csv", row -> add(orderSorter,
+                    CompositeKey.pack(row.getInt(0), row.getInt(1), row.getInt(3)), row));
+            csvParser.parse("data/customer.csv", row -> add(customerSorter,
+                    CompositeKey.pack(row.getInt(0), row.getInt(1), row.getInt(2)), row));
+            System.out.printf("Sorted order file into %d runs and customer file into %d runs.\n",
+                    Math.max(1, orderSorter.getRunCount()), Math.max(1, customerSorter.getRunCount()));
+
+            System.out.println("Start loading data for table : customers, orders_by_timestamp and orders_by_id");
+            Iterator<ExternalSorter.Record> orderIterator = orderSorter.sorted();
+            Iterator<ExternalSorter.Record> customerIterator = customerSorter.sorted();
+            ExternalSorter.Record nextOrder = orderIterator.hasNext() ? orderIterator.next() : null;
+            List<CsvRow> customerOrders = new ArrayList<>();
+
+            while (customerIterator.hasNext()) {
+                ExternalSorter.Record customerRecord = customerIterator.next();
+
+                // orders without a matching customer are loaded without customer name
+                while (nextOrder != null && nextOrder.key < customerRecord.key) {
+                    writeOrder(orderByTimestampWriter, orderByIdWriter, toRow(nextOrder), null);
+                    nextOrder = orderIterator.hasNext() ? orderIterator.next() : null;
+                }
+                customerOrders.clear();
+                while (nextOrder != null && nextOrder.key == customerRecord.key) {
+                    customerOrders.add(toRow(nextOrder));
+                    nextOrder = orderIterator.hasNext() ? orderIterator.next() : null;
+                }
+
+                CsvRow customer = toRow(customerRecord);
+                CsvRow lastOrder = null;
+                for (CsvRow order : customerOrders) {
+                    if (lastOrder == null || lastOrder.getInt(2) < order.getInt(2)) {
+                        lastOrder = order;
+                    }
+                }
+                customerWriter.insert(
+                        customer.getInt(0), customer.getInt(1), customer.getInt(2),
+                        customer.getString(3), customer.getString(4), customer.getString(5),
+                        customer.getString(6), customer.getString(7),
+                        customer.getString(8), customer.getString(9), customer.getString(10), customer.getString(11),
+                        customer.getTimestamp(12), customer.getString(13),
+                        customer.getDecimal(14), customer.getDecimal(15), customer.getDecimal(16),
+                        customer.getFloat(17), customer.getInt(18), customer.getInt(19),
+                        customer.getString(20),
+                        (lastOrder == null) ? null : lastOrder.getInt(2),
+                        (lastOrder == null) ? null : lastOrder.getTimestamp(7),
+                        (lastOrder == null) ? null : getCarrierId(lastOrder));
+                for (CsvRow order : customerOrders) {
+                    writeOrder(orderByTimestampWriter, orderByIdWriter, order, customer);
+                }
+            }
+            while (nextOrder != null) {
+                writeOrder(orderByTimestampWriter, orderByIdWriter, toRow(nextOrder), null);
+                nextOrder = orderIterator.hasNext() ? orderIterator.next() : null;
             }
-            System.out.println("Successfully loaded all data for table : orders_by_timestamp and orders_by_id ");
-        } catch (IOException | ParseException e) {
-            System.out.println("Load data failed with error : " + e.getMessage());
+
+            customerWriter.close();
+            orderByTimestampWriter.close();
+            orderByIdWriter.close();
+        } catch (IOException | UncheckedIOException e) {
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
+        } finally {
+            orderSorter.close();
+            customerSorter.close();
         }
     }
 
+    private static void add(ExternalSorter sorter, long key, CsvRow row) {
+        try {
+            sorter.add(key, row.getLineBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static CsvRow toRow(ExternalSorter.Record record) {
+        CsvRow row = new CsvRow(ByteBuffer.wrap(record.line));
+        row.reset(0, record.line.length);
+        return row;
+    }
+
+    // default value -1 to indicate null
+    private static int getCarrierId(CsvRow order) {
+        return order.isNull(4) ? -1 : order.getInt(4);
+    }
+
+    private static void writeOrder(TableWriter orderByTimestampWriter, TableWriter orderByIdWriter,
+                                   CsvRow order, CsvRow customer) {
+        int wId = order.getInt(0);
+        int dId = order.getInt(1);
+        int id = order.getInt(2);
+        int cId = order.getInt(3);
+        int carrierId = getCarrierId(order);
+        BigDecimal olCnt = order.getDecimal(5);
+        BigDecimal allLocal = order.getDecimal(6);
+        Date entryDate = order.getTimestamp(7);
+        String cFirst = (customer == null) ? null : customer.getString(3);
+        String cMiddle = (customer == null) ? null : customer.getString(4);
+        String cLast = (customer == null) ? null : customer.getString(5);
+
+        orderByTimestampWriter.insert(
+                wId, dId, entryDate, id,
+                cId, carrierId, olCnt, allLocal,
+                cFirst, cMiddle, cLast);
+        orderByIdWriter.insert(
+                wId, dId, id, cId,
+                entryDate, carrierId, olCnt, allLocal,
+                cFirst, cMiddle, cLast);
+    }
+
     private void loadDistricts() {
         String insertDistrictsCmd = "INSERT INTO " + KEY_SPACE + ".districts ("
                 + " D_W_ID, D_ID, D_NAME, D_STREET_1, D_STREET_2, D_CITY, "
                 + " D_STATE, D_ZIP, D_TAX, D_YTD, D_NEXT_O_ID ) "
                 + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-        PreparedStatement insertByDistrictStmt = session.prepare(insertDistrictsCmd);
-        String line;
-        String[] lineData;
+        TableWriter districtWriter = newWriter("districts", insertDistrictsCmd);
 
         try {
-            System.out.println("Start loading data for table : districts");
-            FileReader fr = new FileReader("data/district.csv");
-            BufferedReader bf = new BufferedReader(fr);
-
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-                BoundStatement bound = insertByDistrictStmt.bind(
-                        Integer.parseInt(lineData[0]), Integer.parseInt(lineData[1]),
-                        lineData[2], lineData[3], lineData[4], lineData[5], lineData[6], lineData[7],
-                        new BigDecimal(lineData[8]), new BigDecimal(lineData[9]),
-                        Integer.parseInt(lineData[10]));
-                session.execute(bound);
-            }
-
-            System.out.println("Successfully loaded all data for table : districts ");
+            loadFile("districts", "data/district.csv", districtWriter, row -> districtWriter.insert(
+                    row.getInt(0), row.getInt(1),
+                    row.getString(2), row.getString(3), row.getString(4), row.getString(5),
+                    row.getString(6), row.getString(7),
+                    row.getDecimal(8), row.getDecimal(9),
+                    row.getInt(10)));
         } catch (IOException e) {
-            System.out.println("Load data failed with error : " + e.getMessage());
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
         }
     }
 
@@ -505,26 +779,15 @@ class Setup {
                 + " W_ID, W_NAME, W_STREET_1, W_STREET_2, W_CITY, "
                 + " W_STATE, W_ZIP, W_TAX, W_YTD ) "
                 + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?); ";
-        PreparedStatement insertWarehouseStmt = session.prepare(insertWarehousesCmd);
-        String line;
-        String[] lineData;
+        TableWriter warehouseWriter = newWriter("warehouses", insertWarehousesCmd);
 
         try {
-            System.out.println("Start loading data for table : warehouses");
-            FileReader fr = new FileReader("data/warehouse.csv");
-            BufferedReader bf = new BufferedReader(fr);
-            while ((line = bf.readLine()) != null) {
-                lineData = line.split(",");
-                BoundStatement bound = insertWarehouseStmt.bind(
-                        Integer.parseInt(lineData[0]), lineData[1], lineData[2],
-                        lineData[3], lineData[4], lineData[5], lineData[6],
-                        new BigDecimal(lineData[7]), new BigDecimal(lineData[8]));
-                session.execute(bound);
-            }
-
-            System.out.println("Successfully loaded all data for table : warehouses ");
+            loadFile("warehouses", "data/warehouse.csv", warehouseWriter, row -> warehouseWriter.insert(
+                    row.getInt(0), row.getString(1), row.getString(2),
+                    row.getString(3), row.getString(4), row.getString(5), row.getString(6),
+                    row.getDecimal(7), row.getDecimal(8)));
         } catch (IOException e) {
-            System.out.println("Load data failed with error : " + e.getMessage());
+            throw new IllegalStateException("Load data failed with error : " + e.getMessage(), e);
         }
     }
 }
@@ -0,0 +1,129 @@
+package main.java;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.NettyOptions;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.QueryOptions;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link Session} shared by all clients, created on first use.
+ * Requests are routed to a replica of their partition, balanced over all contact points of the local data center,
+ * and the statements of all transactions are prepared once for all clients in a {@link StatementRegistry}.
+ *
+ * The connection pool is tuned with optional keys in config.env:
+ * POOL_CONNECTIONS connections per host and POOL_MAX_REQUESTS in-flight requests per connection.
+ * LOCAL_DC names the local data center, by default the data center of the first contact point reached.
+ * HEDGED_READS=true hedges slow reads of the read-only transactions with a {@link HedgingPolicy},
+ * after HEDGE_PERCENTILE (default 99) of recent latencies and for at most HEDGE_MAX_RATIO (default 0.05) of requests.
+ */
+class SharedSession {
+    private static final String POOL_CONNECTIONS_KEY = "POOL_CONNECTIONS";
+    private static final String POOL_MAX_REQUESTS_KEY = "POOL_MAX_REQUESTS";
+    private static final String LOCAL_DC_KEY = "LOCAL_DC";
+    private static final String HEDGED_READS_KEY = "HEDGED_READS";
+    private static final String HEDGE_PERCENTILE_KEY = "HEDGE_PERCENTILE";
+    private static final String HEDGE_MAX_RATIO_KEY = "HEDGE_MAX_RATIO";
+    private static final int DEFAULT_POOL_CONNECTIONS = 2;
+    private static final int DEFAULT_POOL_MAX_REQUESTS = 1024;
+
+    private static Cluster cluster;
+    private static Session session;
+    private static StatementRegistry statements;
+    // null if requests are not hedged
+    private static HedgingPolicy hedgingPolicy;
+
+    private SharedSession() {
+    }
+
+    /**
+     * @param consistencyLevel : "ONE" or "QUORUM", default consistency level of all requests
+     * @return the shared session connected to the key space
+     */
+    static synchronized Session get(String consistencyLevel) {
+        if (session != null) {
+            return session;
+        }
+
+        QueryOptions queryOptions = new QueryOptions().setConsistencyLevel(
+                consistencyLevel.equalsIgnoreCase("ONE") ? ConsistencyLevel.ONE : ConsistencyLevel.QUORUM);
+
+        int connections = Setup.getIntConfig(POOL_CONNECTIONS_KEY, DEFAULT_POOL_CONNECTIONS);
+        PoolingOptions poolingOptions = new PoolingOptions()
+                .setConnectionsPerHost(HostDistance.LOCAL, connections, connections)
+                .setMaxRequestsPerConnection(HostDistance.LOCAL,
+                        Setup.getIntConfig(POOL_MAX_REQUESTS_KEY, DEFAULT_POOL_MAX_REQUESTS));
+
+        DCAwareRoundRobinPolicy.Builder dcPolicy = DCAwareRoundRobinPolicy.builder();
+        String localDc = Setup.getConfig(LOCAL_DC_KEY, null);
+        if (localDc != null) {
+            dcPolicy.withLocalDc(localDc);
+        }
+
+        Cluster.Builder builder = Cluster.builder()
+                .addContactPoints(Setup.CONTACT_POINTS)
+                .withQueryOptions(queryOptions)
+                .withPoolingOptions(poolingOptions)
+                .withLoadBalancingPolicy(new TokenAwarePolicy(dcPolicy.build()));
+        if (Boolean.parseBoolean(Setup.getConfig(HEDGED_READS_KEY, "false"))) {
+            hedgingPolicy = new HedgingPolicy(Double.parseDouble(Setup.getConfig(HEDGE_PERCENTILE_KEY, "99")),
+                    Double.parseDouble(Setup.getConfig(HEDGE_MAX_RATIO_KEY, "0.05")));
+            builder.withSpeculativeExecutionPolicy(hedgingPolicy)
+                    .withNettyOptions(new NettyOptions() {
+                        // hedges are scheduled on this timer, which ticks every 100 ms by default
+                        @Override
+                        public Timer timer(ThreadFactory threadFactory) {
+                            return new HashedWheelTimer(threadFactory, 1, TimeUnit.MILLISECONDS);
+                        }
+                    });
+        }
+        cluster = builder.build();
+        if (hedgingPolicy != null) {
+            cluster.register(hedgingPolicy);
+        }
+        session = cluster.connect(Setup.KEY_SPACE);
+        return session;
+    }
+
+    /**
+     * @param consistencyLevel : "ONE" or "QUORUM", default consistency level of all requests
+     * @return statements of all transactions, prepared on the shared session
+     */
+    static synchronized StatementRegistry getStatements(String consistencyLevel) {
+        if (statements == null) {
+            statements = new StatementRegistry(get(consistencyLevel), hedgingPolicy);
+        }
+        return statements;
+    }
+
+    /**
+     * Print the metrics of the shared session, if it was created.
+     */
+    static synchronized void printMetrics() {
+        if (statements != null) {
+            statements.printMetrics();
+        }
+        if (hedgingPolicy != null) {
+            hedgingPolicy.printMetrics();
+        }
+    }
+
+    static synchronized void close() {
+        if (cluster != null) {
+            cluster.close();
+            cluster = null;
+            session = null;
+            statements = null;
+            hedgingPolicy = null;
+        }
+    }
+}
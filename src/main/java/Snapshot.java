@@ -0,0 +1,335 @@
+package main.java;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SocketOptions;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.TokenRange;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports every table of the key space into compact binary files and restores them,
+ * so the baseline data can be reset between benchmark runs without parsing the .csv files again.
+ *
+ * Export scans each table with parallel token range queries and writes every range into its own file
+ * under {@code <SNAPSHOT_DIR>/<table>}, holding the serialized column values exactly as returned by the cluster.
+ * Restore truncates the chosen tables and writes the files back in parallel with {@link BulkWriter},
+ * skipping the serialization round trip. Materialized views are rebuilt by Cassandra from their base tables.
+ *
+ * Usage: main.java.Snapshot export
+ *        main.java.Snapshot restore [table ...]
+ * Without tables, restore reloads every table in the snapshot that transactions write to.
+ */
+class Snapshot {
+    private static final String SNAPSHOT_DIR_KEY = "SNAPSHOT_DIR";
+    private static final String SNAPSHOT_RANGES_KEY = "SNAPSHOT_RANGES";
+    private static final String SNAPSHOT_THREADS_KEY = "SNAPSHOT_THREADS";
+    private static final int DEFAULT_RANGES = 256;
+    private static final int DEFAULT_THREADS = 16;
+    private static final int FETCH_SIZE = 5000;
+    // TRUNCATE waits for every replica to drop its data
+    private static final int TRUNCATE_TIMEOUT_MILLIS = 120000;
+    // tables no transaction writes to, not restored unless asked for
+    private static final List<String> READ_ONLY_TABLES = Arrays.asList("items");
+
+    private static final int MAGIC = 0x53534e50;
+    private static final byte ROW = 1;
+    private static final byte END = 0;
+
+    private final File snapshotDir = new File(Setup.getConfig(SNAPSHOT_DIR_KEY, "snapshot"));
+    private final ExecutorService executor =
+            Executors.newFixedThreadPool(Setup.getIntConfig(SNAPSHOT_THREADS_KEY, DEFAULT_THREADS));
+    private Cluster cluster;
+    private Session session;
+
+    public static void main(String[] args) {
+        if (args.length < 1 || !(args[0].equals("export") || args[0].equals("restore"))) {
+            System.out.println("Usage: main.java.Snapshot export | restore [table ...]");
+            System.exit(1);
+        }
+
+        Snapshot snapshot = new Snapshot();
+        try {
+            snapshot.connect();
+            if (args[0].equals("export")) {
+                snapshot.export();
+            } else {
+                snapshot.restore(Arrays.asList(args).subList(1, args.length));
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    private void connect() {
+        cluster = Cluster.builder()
+                .addContactPoints(Setup.CONTACT_POINTS)
+                .withSocketOptions(new SocketOptions().setReadTimeoutMillis(TRUNCATE_TIMEOUT_MILLIS))
+                .build();
+        session = cluster.connect(Setup.KEY_SPACE);
+    }
+
+    private void close() {
+        executor.shutdownNow();
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    /**
+     * Write every table of the key space into the snapshot folder, replacing any previous snapshot of the table.
+     */
+    private void export() {
+        long startTime = System.currentTimeMillis();
+        Metadata metadata = cluster.getMetadata();
+        List<TokenRange> ranges = splitRing(metadata, Setup.getIntConfig(SNAPSHOT_RANGES_KEY, DEFAULT_RANGES));
+
+        Map<String, AtomicLong> rowCounts = new LinkedHashMap<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (TableMetadata table : metadata.getKeyspace(Setup.KEY_SPACE).getTables()) {
+            File tableDir = new File(snapshotDir, table.getName());
+            deleteSnapshot(tableDir);
+            if (!tableDir.isDirectory() && !tableDir.mkdirs()) {
+                throw new IllegalStateException("Create folder " + tableDir + " failed.");
+            }
+
+            AtomicLong rowCount = new AtomicLong();
+            rowCounts.put(table.getName(), rowCount);
+            String partitionKey = joinColumns(table.getPartitionKey());
+            String select = "SELECT * FROM " + table.getName() + " WHERE token(" + partitionKey + ") > ?";
+            PreparedStatement selectRangeStmt = session.prepare(select + " AND token(" + partitionKey + ") <= ?");
+            PreparedStatement selectTailStmt = session.prepare(select);
+
+            for (int i = 0; i < ranges.size(); i++) {
+                TokenRange range = ranges.get(i);
+                // unwrapped ranges only end before their start at the minimum token, i.e. the end of the ring
+                BoundStatement selectStmt = (range.getEnd().compareTo(range.getStart()) <= 0)
+                        ? selectTailStmt.bind().setToken(0, range.getStart())
+                        : selectRangeStmt.bind().setToken(0, range.getStart()).setToken(1, range.getEnd());
+                File file = new File(tableDir, i + ".bin");
+                futures.add(executor.submit(() -> {
+                    rowCount.addAndGet(exportRange(selectStmt, file));
+                    return null;
+                }));
+            }
+        }
+        waitAll(futures);
+
+        for (Map.Entry<String, AtomicLong> rowCount : rowCounts.entrySet()) {
+            System.out.printf("Successfully exported %d rows for table : %s \n",
+                    rowCount.getValue().get(), rowCount.getKey());
+        }
+        System.out.printf("Snapshot is written to folder : %s (%.1f sec) \n",
+                snapshotDir, (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    private long exportRange(BoundStatement selectStmt, File file) throws IOException {
+        selectStmt.setFetchSize(FETCH_SIZE);
+        ResultSet resultSet = session.execute(selectStmt);
+        int columnCount = resultSet.getColumnDefinitions().size();
+        long rowCount = 0;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                out.writeUTF(resultSet.getColumnDefinitions().getName(i));
+            }
+
+            for (Row row : resultSet) {
+                // fetch the next page in the background while this one is written
+                if (resultSet.getAvailableWithoutFetching() == FETCH_SIZE / 2 && !resultSet.isFullyFetched()) {
+                    resultSet.fetchMoreResults();
+                }
+                out.writeByte(ROW);
+                for (int i = 0; i < columnCount; i++) {
+                    ByteBuffer value = row.getBytesUnsafe(i);
+                    if (value == null) {
+                        out.writeInt(-1);
+                    } else {
+                        byte[] bytes = new byte[value.remaining()];
+                        value.duplicate().get(bytes);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+                rowCount++;
+            }
+            out.writeByte(END);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Truncate the tables and write their snapshot back.
+     * @param tables : tables to restore, empty for every table in the snapshot that transactions write to
+     */
+    private void restore(List<String> tables) {
+        long startTime = System.currentTimeMillis();
+        if (tables.isEmpty()) {
+            tables = new ArrayList<>();
+            String[] names = snapshotDir.list();
+            if (names == null) {
+                throw new IllegalStateException("No snapshot found in folder : " + snapshotDir);
+            }
+            for (String name : names) {
+                if (!READ_ONLY_TABLES.contains(name)) {
+                    tables.add(name);
+                }
+            }
+        }
+
+        List<BulkWriter> writers = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String table : tables) {
+            File[] files = new File(snapshotDir, table).listFiles();
+            if (files == null || files.length == 0) {
+                throw new IllegalStateException("No snapshot found for table : " + table);
+            }
+            List<String> columns = readColumns(files[0]);
+
+            session.execute("TRUNCATE " + table);
+            System.out.println("Successfully truncated table : " + table);
+
+            StringBuilder insertCmd = new StringBuilder("INSERT INTO " + table + " (");
+            StringBuilder values = new StringBuilder(" VALUES (");
+            for (int i = 0; i < columns.size(); i++) {
+                insertCmd.append((i == 0) ? "" : ", ").append(columns.get(i));
+                values.append((i == 0) ? "?" : ", ?");
+            }
+            insertCmd.append(")").append(values).append(");");
+            BulkWriter writer = new BulkWriter(session, table, insertCmd.toString(),
+                    Setup.getIntConfig(Setup.LOAD_CONCURRENCY_KEY, Setup.DEFAULT_LOAD_CONCURRENCY),
+                    Setup.getIntConfig(Setup.LOAD_BATCH_SIZE_KEY, 1));
+            writers.add(writer);
+
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    restoreFile(file, writer);
+                    return null;
+                }));
+            }
+        }
+        waitAll(futures);
+
+        for (BulkWriter writer : writers) {
+            writer.close();
+        }
+        System.out.printf("Snapshot is restored (%.1f sec) \n", (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    private List<String> readColumns(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return readHeader(in, file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Read snapshot " + file + " failed with error : " + e.getMessage(), e);
+        }
+    }
+
+    private static List<String> readHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(file + " is not a snapshot file");
+        }
+        int columnCount = in.readInt();
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(in.readUTF());
+        }
+        return columns;
+    }
+
+    private static void restoreFile(File file, BulkWriter writer) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            int columnCount = readHeader(in, file).size();
+            while (in.readByte() == ROW) {
+                ByteBuffer[] values = new ByteBuffer[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    int length = in.readInt();
+                    if (length >= 0) {
+                        byte[] value = new byte[length];
+                        in.readFully(value);
+                        values[i] = ByteBuffer.wrap(value);
+                    }
+                }
+                writer.insertSerialized(values);
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated", e);
+        }
+    }
+
+    // split the ring evenly into non-wrapping ranges covering all tokens
+    private static List<TokenRange> splitRing(Metadata metadata, int rangeCount) {
+        List<TokenRange> ranges = new ArrayList<>();
+        int splits = Math.max(1, rangeCount / Math.max(1, metadata.getTokenRanges().size()));
+        for (TokenRange range : metadata.getTokenRanges()) {
+            for (TokenRange split : range.splitEvenly(splits)) {
+                ranges.addAll(split.unwrap());
+            }
+        }
+        return ranges;
+    }
+
+    private static String joinColumns(List<ColumnMetadata> columns) {
+        StringBuilder sb = new StringBuilder();
+        for (ColumnMetadata column : columns) {
+            sb.append((sb.length() == 0) ? "" : ", ").append(column.getName());
+        }
+        return sb.toString();
+    }
+
+    private static void deleteSnapshot(File tableDir) {
+        File[] files = tableDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    throw new IllegalStateException("Delete " + file + " failed.");
+                }
+            }
+        }
+    }
+
+    private static void waitAll(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Snapshot failed with error : " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Snapshot interrupted.", e);
+        }
+    }
+}
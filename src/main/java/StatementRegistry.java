@@ -0,0 +1,490 @@
+package main.java;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prepares every query of the seven transactions once, all in parallel, and hands out bound statements by id.
+ * Transactions only execute statements through the registry, so no query is parsed again on the hot path.
+ *
+ * Every {@link Query} carries its own statement settings:
+ * - idempotent: reads are safe to retry or send to another replica, writes of read-modify-write updates are not
+ * - fetchSize: rows per page, 0 for the driver default
+ * - consistencyLevel: null for the default consistency level chosen for the run
+ *
+ * With ADAPTIVE_LIMIT=true in config.env, the requests in flight to every node are capped by a
+ * {@link ConcurrencyLimiter}, starting at ADAPTIVE_LIMIT_INITIAL and never above ADAPTIVE_LIMIT_MAX.
+ * A request counts against the first replica of its partition, the node the token-aware policy prefers.
+ *
+ * With READ_COALESCING=true, a read of a hot row sent while the same read (same query and values) is in flight
+ * is not sent again but completes with the rows of the pending read, see {@link #read(Query, Object...)}.
+ *
+ * With GROUP_COMMIT=true, writes to the same partition within GROUP_COMMIT_WINDOW_MICROS are sent together
+ * by a {@link GroupCommitter}, at most GROUP_COMMIT_MAX_BATCH writes per batch.
+ */
+class StatementRegistry {
+    private static final String ADAPTIVE_LIMIT_KEY = "ADAPTIVE_LIMIT";
+    private static final String READ_COALESCING_KEY = "READ_COALESCING";
+    private static final String GROUP_COMMIT_KEY = "GROUP_COMMIT";
+    private static final String GROUP_COMMIT_WINDOW_MICROS_KEY = "GROUP_COMMIT_WINDOW_MICROS";
+    private static final String GROUP_COMMIT_MAX_BATCH_KEY = "GROUP_COMMIT_MAX_BATCH";
+    private static final int DEFAULT_GROUP_COMMIT_WINDOW_MICROS = 200;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 32;
+    private static final String ADAPTIVE_LIMIT_INITIAL_KEY = "ADAPTIVE_LIMIT_INITIAL";
+    private static final String ADAPTIVE_LIMIT_MAX_KEY = "ADAPTIVE_LIMIT_MAX";
+    private static final int DEFAULT_ADAPTIVE_LIMIT_INITIAL = 20;
+    private static final int DEFAULT_ADAPTIVE_LIMIT_MAX = 1000;
+    private static final Executor DIRECT = MoreExecutors.directExecutor();
+
+    enum Query {
+        NEW_ORDER_SELECT_WAREHOUSE(OrderTransaction.SELECT_WAREHOUSE, true),
+        NEW_ORDER_SELECT_DISTRICT(OrderTransaction.SELECT_DISTRICT, true),
+        NEW_ORDER_SELECT_CUSTOMER(OrderTransaction.SELECT_CUSTOMER, true),
+        NEW_ORDER_SELECT_STOCK(OrderTransaction.SELECT_STOCK, true),
+        // items are never written after the load, any replica has the latest data
+        NEW_ORDER_SELECT_ITEM(OrderTransaction.SELECT_ITEM, true, 0, ConsistencyLevel.ONE),
+        NEW_ORDER_UPDATE_DISTRICT_NEXT_O_ID(OrderTransaction.UPDATE_DISTRICT_NEXT_O_ID, false),
+        NEW_ORDER_UPDATE_CUSTOMER_ORDER(OrderTransaction.UPDATE_CUSTOMER_ORDER, false),
+        NEW_ORDER_UPDATE_STOCK(OrderTransaction.UPDATE_STOCK, false),
+        NEW_ORDER_INSERT_ORDER_BY_TIMESTAMP(OrderTransaction.INSERT_ORDER_BY_TIMESTAMP, false),
+        NEW_ORDER_INSERT_ORDER_BY_ID(OrderTransaction.INSERT_ORDERS_BY_ID, false),
+        NEW_ORDER_INSERT_ORDER_LINE(OrderTransaction.INSERT_ORDER_LINE, false),
+
+        PAYMENT_SELECT_WAREHOUSE(PaymentTransaction.SELECT_WAREHOUSE, true),
+        PAYMENT_SELECT_DISTRICT(PaymentTransaction.SELECT_DISTRICT, true),
+        PAYMENT_SELECT_CUSTOMER(PaymentTransaction.SELECT_CUSTOMER, true),
+        PAYMENT_UPDATE_WAREHOUSE_YTD(PaymentTransaction.UPDATE_WAREHOUSE_YTD, false),
+        PAYMENT_UPDATE_DISTRICT_YTD(PaymentTransaction.UPDATE_DISTRICT_YTD, false),
+        PAYMENT_UPDATE_CUSTOMER(PaymentTransaction.UPDATE_CUSTOMER_BY_PAYMENT, false),
+
+        DELIVERY_SELECT_SMALLEST_ORDER(DeliveryTransaction.SELECT_SMALLEST_ORDER, true),
+        // an order has at most 15 lines, read them in one page
+        DELIVERY_SELECT_ORDER_LINES(DeliveryTransaction.SELECT_ORDER_LINES, true, 20, null),
+        DELIVERY_SELECT_CUSTOMER(DeliveryTransaction.SELECT_CUSTOMER, true),
+        DELIVERY_UPDATE_CUSTOMER(DeliveryTransaction.UPDATE_CUSTOMER_BY_DELIVERY, false),
+        DELIVERY_UPDATE_ORDER_LINE(DeliveryTransaction.UPDATE_ORDER_LINE, false),
+        DELIVERY_UPDATE_ORDER_BY_ID(DeliveryTransaction.UPDATE_ORDER_BY_ID, false),
+        DELIVERY_UPDATE_ORDER_BY_TIMESTAMP(DeliveryTransaction.UPDATE_ORDER_BY_TIMESTAMP, false),
+
+        ORDER_STATUS_SELECT_CUSTOMER(OrderStatusTransaction.SELECT_CUSTOMER, true),
+        ORDER_STATUS_SELECT_ORDER_LINES(OrderStatusTransaction.SELECT_ORDER_LINES, true, 20, null),
+
+        STOCK_LEVEL_SELECT_LAST_ORDERS(StockLevelTransaction.SELECT_LAST_ORDERS, true),
+        STOCK_LEVEL_SELECT_ORDER_ITEMS(StockLevelTransaction.SELECT_ORDER_ITEMS, true, 20, null),
+        STOCK_LEVEL_SELECT_STOCK_QUANTITIES(StockLevelTransaction.SELECT_STOCK_QUANTITIES, true),
+
+        POPULAR_ITEM_SELECT_LAST_ORDERS(PopularItemTransaction.SELECT_LAST_ORDERS, true),
+        POPULAR_ITEM_SELECT_ORDER_LINES(PopularItemTransaction.SELECT_ORDER_LINES, true, 20, null),
+
+        TOP_BALANCE_SELECT_DISTRICTS(TopBalanceTransaction.SELECT_DISTRICTS, true),
+        TOP_BALANCE_SELECT_TOP_BALANCE(TopBalanceTransaction.SELECT_TOP_BALANCE, true),
+        TOP_BALANCE_SELECT_CUSTOMER_NAME(TopBalanceTransaction.SELECT_CUSTOMER_NAME, true);
+
+        // single row reads of the rows most clients read at the same time, the only reads coalesced.
+        // Only values never written by the transactions: a read followed by a write of the value it read
+        // (D_NEXT_O_ID, W_YTD, D_YTD) must see the latest write, not share a read sent before it.
+        private static final Set<Query> COALESCED = EnumSet.of(NEW_ORDER_SELECT_WAREHOUSE, NEW_ORDER_SELECT_ITEM);
+        // reads of the read-only transactions, the only reads hedged
+        private static final Set<Query> HEDGED = EnumSet.of(ORDER_STATUS_SELECT_CUSTOMER,
+                ORDER_STATUS_SELECT_ORDER_LINES, STOCK_LEVEL_SELECT_LAST_ORDERS, STOCK_LEVEL_SELECT_ORDER_ITEMS,
+                STOCK_LEVEL_SELECT_STOCK_QUANTITIES, POPULAR_ITEM_SELECT_LAST_ORDERS, POPULAR_ITEM_SELECT_ORDER_LINES,
+                TOP_BALANCE_SELECT_DISTRICTS, TOP_BALANCE_SELECT_TOP_BALANCE, TOP_BALANCE_SELECT_CUSTOMER_NAME);
+
+        private final String cql;
+        private final boolean idempotent;
+        private final int fetchSize;
+        private final ConsistencyLevel consistencyLevel;
+        // computed once, checked for every request
+        private final boolean write;
+        // e.g. "NEW_ORDER" for NEW_ORDER_SELECT_ITEM
+        private final String transactionType;
+
+        Query(String cql, boolean idempotent) {
+            this(cql, idempotent, 0, null);
+        }
+
+        Query(String cql, boolean idempotent, int fetchSize, ConsistencyLevel consistencyLevel) {
+            this.cql = cql;
+            this.idempotent = idempotent;
+            this.fetchSize = fetchSize;
+            this.consistencyLevel = consistencyLevel;
+            this.write = !cql.trim().toUpperCase().startsWith("SELECT");
+            String type = name();
+            for (String operation : new String[] {"_SELECT_", "_UPDATE_", "_INSERT_"}) {
+                if (type.contains(operation)) {
+                    type = type.substring(0, type.indexOf(operation));
+                    break;
+                }
+            }
+            this.transactionType = type;
+        }
+
+        boolean isWrite() {
+            return write;
+        }
+
+        String getTransactionType() {
+            return transactionType;
+        }
+    }
+
+    private final Session session;
+    private final Map<Query, PreparedStatement> statements = new EnumMap<>(Query.class);
+    // null when requests are not limited
+    private final ConcurrentMap<Host, ConcurrencyLimiter> limiters;
+    // limits requests without a routing key
+    private final ConcurrencyLimiter anyHostLimiter;
+    // sends the requests waiting for a limit, off the driver threads completing requests
+    private final Executor limiterDispatcher;
+    private final int initialLimit;
+    private final int maxLimit;
+    // pending coalesced reads by query and values, null when reads are not coalesced
+    private final ConcurrentMap<ReadKey, ListenableFuture<List<Row>>> pendingReads;
+    private final LongAdder sentReads = new LongAdder();
+    private final LongAdder coalescedReads = new LongAdder();
+    // null when writes are not grouped
+    private final GroupCommitter groupCommitter;
+    // null when reads are not hedged
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * Prepare all queries, waiting until every one of them is prepared.
+     * @param hedgingPolicy : policy hedging the reads, to record their latency and hedges, null if not hedged
+     */
+    StatementRegistry(Session session, HedgingPolicy hedgingPolicy) {
+        this.session = session;
+        this.hedgingPolicy = hedgingPolicy;
+        initialLimit = Setup.getIntConfig(ADAPTIVE_LIMIT_INITIAL_KEY, DEFAULT_ADAPTIVE_LIMIT_INITIAL);
+        maxLimit = Setup.getIntConfig(ADAPTIVE_LIMIT_MAX_KEY, DEFAULT_ADAPTIVE_LIMIT_MAX);
+        if (Boolean.parseBoolean(Setup.getConfig(ADAPTIVE_LIMIT_KEY, "false"))) {
+            limiters = new ConcurrentHashMap<>();
+            limiterDispatcher = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "limiter-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            anyHostLimiter = new ConcurrencyLimiter("any node", initialLimit, maxLimit, limiterDispatcher);
+        } else {
+            limiters = null;
+            limiterDispatcher = null;
+            anyHostLimiter = null;
+        }
+        pendingReads = Boolean.parseBoolean(Setup.getConfig(READ_COALESCING_KEY, "false"))
+                ? new ConcurrentHashMap<>() : null;
+        groupCommitter = Boolean.parseBoolean(Setup.getConfig(GROUP_COMMIT_KEY, "false"))
+                ? new GroupCommitter(
+                        Setup.getIntConfig(GROUP_COMMIT_WINDOW_MICROS_KEY, DEFAULT_GROUP_COMMIT_WINDOW_MICROS),
+                        Setup.getIntConfig(GROUP_COMMIT_MAX_BATCH_KEY, DEFAULT_GROUP_COMMIT_MAX_BATCH), this::send)
+                : null;
+
+        List<ListenableFuture<PreparedStatement>> futures = new ArrayList<>();
+        for (Query query : Query.values()) {
+            futures.add(session.prepareAsync(query.cql));
+        }
+        try {
+            List<PreparedStatement> prepared = Futures.allAsList(futures).get();
+            for (Query query : Query.values()) {
+                PreparedStatement statement = prepared.get(query.ordinal());
+                statement.setIdempotent(query.idempotent);
+                if (query.consistencyLevel != null) {
+                    statement.setConsistencyLevel(query.consistencyLevel);
+                }
+                if (hedgingPolicy != null && Query.HEDGED.contains(query)) {
+                    hedgingPolicy.hedge(statement);
+                }
+                statements.put(query, statement);
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Prepare statements failed with error : " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Prepare statements interrupted.", e);
+        }
+    }
+
+    /**
+     * Bind the values to the prepared statement of the query, applying the settings of the query.
+     */
+    BoundStatement bind(Query query, Object... values) {
+        BoundStatement statement = statements.get(query).bind(values);
+        if (query.fetchSize > 0) {
+            statement.setFetchSize(query.fetchSize);
+        }
+        return statement;
+    }
+
+    ResultSet execute(Query query, Object... values) {
+        // read latencies are recorded by executeAsync when reads are hedged
+        if (limiters == null && groupCommitter == null && hedgingPolicy == null) {
+            return session.execute(bind(query, values));
+        }
+        return getResult(query, executeAsync(query, values));
+    }
+
+    ListenableFuture<ResultSet> executeAsync(Query query, Object... values) {
+        BoundStatement statement = bind(query, values);
+        if (groupCommitter != null && query.isWrite()) {
+            ByteBuffer routingKey = getRoutingKey(statement);
+            if (routingKey != null) {
+                return groupCommitter.add(statements.get(query).getVariables().getTable(0), routingKey, statement);
+            }
+        }
+        if (hedgingPolicy == null || query.isWrite()) {
+            return send(statement);
+        }
+
+        long startTime = System.nanoTime();
+        ListenableFuture<ResultSet> result = send(statement);
+        Futures.addCallback(result, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+                hedgingPolicy.record(query.getTransactionType(), resultSet.getExecutionInfo(),
+                        System.nanoTime() - startTime);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+        }, DIRECT);
+        return result;
+    }
+
+    /**
+     * Send the statement, waiting for the limit of its node if requests are limited.
+     */
+    private ListenableFuture<ResultSet> send(Statement statement) {
+        if (limiters == null) {
+            return session.executeAsync(statement);
+        }
+
+        ConcurrencyLimiter limiter = getLimiter(statement);
+        SettableFuture<ResultSet> result = SettableFuture.create();
+        limiter.submit(() -> {
+            long startTime = System.nanoTime();
+            ListenableFuture<ResultSet> future;
+            try {
+                future = session.executeAsync(statement);
+            } catch (RuntimeException e) {
+                // the limiter releases the slot of a request failing to be sent
+                result.setException(e);
+                throw e;
+            }
+            Futures.addCallback(future, new FutureCallback<ResultSet>() {
+                @Override
+                public void onSuccess(ResultSet resultSet) {
+                    limiter.release(System.nanoTime() - startTime, false);
+                    result.set(resultSet);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    limiter.release(System.nanoTime() - startTime, isOverload(t));
+                    result.setException(t);
+                }
+            }, DIRECT);
+        });
+        return result;
+    }
+
+    /**
+     * Execute the statements as one unlogged batch, all of them must write the same partition.
+     */
+    ResultSet executeBatch(List<BoundStatement> batch) {
+        return getResult("batch", executeBatchAsync(batch));
+    }
+
+    /**
+     * Asynchronous {@link #executeBatch(List)}, completing at once if there is no statement.
+     */
+    ListenableFuture<ResultSet> executeBatchAsync(List<BoundStatement> batch) {
+        if (batch.isEmpty()) {
+            return Futures.immediateFuture(null);
+        }
+        // the statements are already grouped, not grouped again by the group committer
+        return send(new BatchStatement(BatchStatement.Type.UNLOGGED).addAll(batch));
+    }
+
+    /**
+     * Stream the rows of the query, fetching the next page once half of the current page is consumed.
+     */
+    RowStream stream(Query query, Object... values) {
+        int pageSize = (query.fetchSize > 0)
+                ? query.fetchSize : session.getCluster().getConfiguration().getQueryOptions().getFetchSize();
+        return new RowStream(execute(query, values), pageSize / 2);
+    }
+
+    /**
+     * Read all rows of the query. If reads are coalesced and the same read is already in flight,
+     * no request is sent and the rows of the pending read are returned, shared with its other callers.
+     */
+    List<Row> read(Query query, Object... values) {
+        if (pendingReads == null || !Query.COALESCED.contains(query)) {
+            return execute(query, values).all();
+        }
+        return getResult(query, readAsync(query, values));
+    }
+
+    /**
+     * Asynchronous {@link #read(Query, Object...)}, the rows must not be modified as callers may share them.
+     */
+    ListenableFuture<List<Row>> readAsync(Query query, Object... values) {
+        if (pendingReads == null || !Query.COALESCED.contains(query)) {
+            return Futures.transform(executeAsync(query, values), (Function<ResultSet, List<Row>>) ResultSet::all, DIRECT);
+        }
+
+        ReadKey key = new ReadKey(query, values);
+        SettableFuture<List<Row>> read = SettableFuture.create();
+        ListenableFuture<List<Row>> pending = pendingReads.putIfAbsent(key, read);
+        if (pending != null) {
+            coalescedReads.increment();
+            return pending;
+        }
+        sentReads.increment();
+        Futures.addCallback(executeAsync(query, values), new FutureCallback<ResultSet>() {
+            // removed before completing, a read sent after the rows arrived gets fresh rows
+            @Override
+            public void onSuccess(ResultSet resultSet) {
+                pendingReads.remove(key, read);
+                // coalesced reads are single rows in one page, nothing more is fetched on the driver thread
+                read.set(resultSet.all());
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                pendingReads.remove(key, read);
+                read.setException(t);
+            }
+        }, DIRECT);
+        return read;
+    }
+
+    /**
+     * Print the limit and queueing of every node if requests are limited, and the hit rate of coalesced reads.
+     */
+    void printMetrics() {
+        if (limiters != null) {
+            System.out.println("Adaptive concurrency limits:");
+            for (ConcurrencyLimiter limiter : limiters.values()) {
+                System.out.println("  " + limiter.getMetrics());
+            }
+            System.out.println("  " + anyHostLimiter.getMetrics());
+        }
+        if (groupCommitter != null) {
+            groupCommitter.printMetrics();
+        }
+        if (pendingReads != null) {
+            long sent = sentReads.sum();
+            long coalesced = coalescedReads.sum();
+            long total = sent + coalesced;
+            System.out.printf("Read coalescing: %d reads, %d sent, %d coalesced (hit rate %.2f%%) \n",
+                    total, sent, coalesced, (total == 0) ? 0.0 : coalesced * 100.0 / total);
+        }
+    }
+
+    /**
+     * @param request : query or statement executed, for the error message
+     */
+    private static <T> T getResult(Object request, ListenableFuture<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            // same as the driver, rethrow a copy with the stack trace of the calling thread
+            if (e.getCause() instanceof DriverException) {
+                throw ((DriverException) e.getCause()).copy();
+            }
+            throw new IllegalStateException("Execute " + request + " failed with error : " + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private ByteBuffer getRoutingKey(Statement statement) {
+        Configuration configuration = session.getCluster().getConfiguration();
+        return statement.getRoutingKey(
+                configuration.getProtocolOptions().getProtocolVersion(), configuration.getCodecRegistry());
+    }
+
+    private ConcurrencyLimiter getLimiter(Statement statement) {
+        ByteBuffer routingKey = getRoutingKey(statement);
+        if (routingKey == null) {
+            return anyHostLimiter;
+        }
+        Iterator<Host> replicas = session.getCluster().getMetadata()
+                .getReplicas(session.getLoggedKeyspace(), routingKey).iterator();
+        if (!replicas.hasNext()) {
+            return anyHostLimiter;
+        }
+        Host host = replicas.next();
+        ConcurrencyLimiter limiter = limiters.get(host);
+        if (limiter == null) {
+            limiters.putIfAbsent(host, new ConcurrencyLimiter(host.toString(), initialLimit, maxLimit, limiterDispatcher));
+            limiter = limiters.get(host);
+        }
+        return limiter;
+    }
+
+    private static final class ReadKey {
+        private final Query query;
+        private final Object[] values;
+
+        ReadKey(Query query, Object[] values) {
+            this.query = query;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ReadKey)) {
+                return false;
+            }
+            ReadKey other = (ReadKey) o;
+            return query == other.query && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + Arrays.hashCode(values);
+        }
+    }
+
+    private static boolean isOverload(Throwable t) {
+        return t instanceof OperationTimedOutException || t instanceof ReadTimeoutException
+                || t instanceof WriteTimeoutException || t instanceof OverloadedException;
+    }
+}
@@ -1,65 +1,153 @@
 package main.java;
 
-import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import main.java.StatementRegistry.Query;
 
 import java.math.BigDecimal;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StockLevelTransaction {
-    static final String KEY_SPACE = Setup.KEY_SPACE;
-
-    private Session session;
-
-    StockLevelTransaction(Session session){
-        this.session = session;
+    // stocks of a warehouse are in one partition, at most STOCK_READ_SIZE of them are read by one request
+    private static final int STOCK_READ_SIZE = 50;
+
+    // orders of a district are clustered by order id, the last orders are the first ones in descending order
+    static final String SELECT_LAST_ORDERS =
+            "SELECT O_ID "
+                    + "FROM orders_by_id "
+                    + "WHERE O_W_ID = ? AND O_D_ID = ? "
+                    + "ORDER BY O_ID DESC LIMIT ?;";
+    static final String SELECT_ORDER_ITEMS =
+            "SELECT OL_I_ID "
+                    + "FROM order_lines "
+                    + "WHERE OL_W_ID = ? AND OL_D_ID = ? AND OL_O_ID = ?;";
+    static final String SELECT_STOCK_QUANTITIES =
+            "SELECT S_I_ID, S_QUANTITY "
+                    + "FROM stocks "
+                    + "WHERE S_W_ID = ? AND S_I_ID IN ?;";
+
+    private final StatementRegistry statements;
+
+    StockLevelTransaction(StatementRegistry statements){
+        this.statements = statements;
     }
 
-    void processStockLevel(int w_ID, int d_ID, int T, int L) {
-
-        //get Last L order number
+    /**
+     * Items of the last L orders of the district with a stock below the threshold T.
+     * The order lines of all orders are read concurrently, then the stocks of the distinct items,
+     * STOCK_READ_SIZE items per request, all requests concurrently.
+     */
+    StockLevel processStockLevel(int w_ID, int d_ID, int T, int L) {
+        //get all items of the last L orders, reading the items of an order as soon as its number is read
+        List<ListenableFuture<List<Row>>> itemFutures = new ArrayList<>();
+        for (Row order : statements.stream(Query.STOCK_LEVEL_SELECT_LAST_ORDERS, w_ID, d_ID, L)) {
+            itemFutures.add(statements.readAsync(Query.STOCK_LEVEL_SELECT_ORDER_ITEMS,
+                    w_ID, d_ID, order.getInt("O_ID")));
+        }
+        int[] itemIds = getDistinctItemIds(Futures.getUnchecked(Futures.allAsList(itemFutures)));
+
+        //check if item quantity in the stock is below the threshold, as the stocks are read
+        BigDecimal threshold = new BigDecimal(T);
+        BigDecimal[] lowQuantities = new BigDecimal[itemIds.length];
+        List<ListenableFuture<List<Row>>> stockFutures = new ArrayList<>();
+        for (int from = 0; from < itemIds.length; from += STOCK_READ_SIZE) {
+            List<Integer> ids = new ArrayList<>();
+            for (int i = from; i < Math.min(itemIds.length, from + STOCK_READ_SIZE); i++) {
+                ids.add(itemIds[i]);
+            }
+            ListenableFuture<List<Row>> future =
+                    statements.readAsync(Query.STOCK_LEVEL_SELECT_STOCK_QUANTITIES, w_ID, ids);
+            Futures.addCallback(future, new FutureCallback<List<Row>>() {
+                @Override
+                public void onSuccess(List<Row> stocks) {
+                    for (Row stock : stocks) {
+                        BigDecimal quantity = stock.getDecimal("S_QUANTITY");
+                        if (quantity.compareTo(threshold) < 0) {
+                            lowQuantities[Arrays.binarySearch(itemIds, stock.getInt("S_I_ID"))] = quantity;
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                }
+            }, MoreExecutors.directExecutor());
+            stockFutures.add(future);
+        }
+        // every callback was added before allAsList, so all of them ran once it completes
+        Futures.getUnchecked(Futures.allAsList(stockFutures));
 
-        String getLastLOrderNumber = "SELECT O_ID FROM " + KEY_SPACE +".orders_by_timestamp " +
-                "WHERE O_W_ID = " + w_ID + " AND O_D_ID = " + d_ID + " LIMIT " + L + " allow filtering;";
-        ResultSet lastOrderList = session.execute(getLastLOrderNumber);
+        StockLevel stockLevel = new StockLevel(w_ID);
+        for (int i = 0; i < itemIds.length; i++) {
+            if (lowQuantities[i] != null) {
+                stockLevel.lowStockItems.add(new LowStockItem(itemIds[i], lowQuantities[i]));
+            }
+        }
+        return stockLevel;
+    }
 
+    private int[] getDistinctItemIds(List<List<Row>> orderLines) {
+        int size = 0;
+        for (List<Row> lines : orderLines) {
+            size += lines.size();
+        }
+        int[] ids = new int[size];
+        int i = 0;
+        for (List<Row> lines : orderLines) {
+            for (Row line : lines) {
+                ids[i++] = line.getInt("OL_I_ID");
+            }
+        }
+        Arrays.sort(ids);
 
-        Set<Integer> items = new HashSet<>();
-        //HashMap<Integer, Integer> itemQuantity = new HashMap<Integer, Integer>();
+        int distinct = 0;
+        for (int j = 0; j < ids.length; j++) {
+            if (j == 0 || ids[j] != ids[j - 1]) {
+                ids[distinct++] = ids[j];
+            }
+        }
+        return Arrays.copyOf(ids, distinct);
+    }
 
+    /**
+     * Items below the threshold, by item id.
+     */
+    static class StockLevel {
+        final int warehouseId;
+        final List<LowStockItem> lowStockItems = new ArrayList<>();
 
-        for (Row row1 : lastOrderList) {
-            int lastOrder = row1.getInt("O_ID");
+        StockLevel(int warehouseId) {
+            this.warehouseId = warehouseId;
+        }
 
-            //get all items
-            String getAllItems = "SELECT OL_I_ID FROM " + KEY_SPACE + ".order_lines " +
-                    "WHERE OL_W_ID = " + w_ID + " AND OL_D_ID = " + d_ID + " AND OL_O_ID = " + lastOrder;
-            ResultSet itemList = session.execute(getAllItems);
+        int getCount() {
+            return lowStockItems.size();
+        }
 
-            for (Row row2 : itemList) {
-                //add the item id into the items list
-                int itemID = row2.getInt("OL_I_ID");
-                items.add(itemID);
+        void print() {
+            StringBuilder sb = new StringBuilder();
+            for (LowStockItem item : lowStockItems) {
+                sb.append("Items ").append(item.itemId).append(" stock quantity at ").append(warehouseId)
+                        .append(" is below the threshold; its quantity number is: ").append(item.quantity)
+                        .append(".\n");
             }
-
+            sb.append("\n\n\n");
+            System.out.print(sb);
         }
+    }
 
-        for (int itemID : items) {
-            //check if item quantity in the stock is below the threshold
-            String getQuantity = "SELECT S_QUANTITY FROM " + KEY_SPACE + ".stocks " +
-                    "WHERE S_W_ID = " + w_ID + " AND S_I_ID = " + itemID + ";";
-
-            BigDecimal quantity = session.execute(getQuantity).one().getDecimal("S_QUANTITY");
-
-            BigDecimal decimalT = new BigDecimal(T);
+    static class LowStockItem {
+        final int itemId;
+        final BigDecimal quantity;
 
-            if(quantity.compareTo(decimalT) == -1) {
-                //itemQuantity.put(itemID, quantity);
-                System.out.println("Items " + itemID + " stock quantity at "+ w_ID + " is below the threshold; its quantity number is: " + quantity + ".");
-            }
+        LowStockItem(int itemId, BigDecimal quantity) {
+            this.itemId = itemId;
+            this.quantity = quantity;
         }
-        System.out.println("\n\n");
     }
 }
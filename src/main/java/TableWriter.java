@@ -0,0 +1,27 @@
+package main.java;
+
+/**
+ * Destination of the rows of one table during bulk load.
+ * Implementations must accept {@link #insert(Object...)} calls from several threads at once.
+ */
+interface TableWriter {
+    /**
+     * Insert one row.
+     * @param values : column values in the order of the table's insert command, null for no value
+     */
+    void insert(Object... values);
+
+    /**
+     * Wait until every row inserted so far is written.
+     * Must only be called while no other thread is inserting.
+     */
+    void flush();
+
+    long getRowCount();
+
+    /**
+     * Finish writing all inserted rows and report the load rate of the table.
+     * Must only be called after all inserting threads are done.
+     */
+    void close();
+}
@@ -0,0 +1,99 @@
+package main.java;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Thread-safe replacement for parsing "yyyy-MM-dd HH:mm:ss.SSS" timestamps with SimpleDateFormat.
+ * Fields are read as digit groups and converted to epoch milliseconds arithmetically,
+ * the local time is interpreted in the default time zone like SimpleDateFormat does.
+ * As with SimpleDateFormat, the fraction is read as a plain number of milliseconds.
+ */
+final class TimestampParser {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final int FIELD_COUNT = 7;
+
+    // TimeZone instances cache transitions internally, so each thread uses its own copy
+    private static final ThreadLocal<TimeZone> TIME_ZONE =
+            ThreadLocal.withInitial(() -> (TimeZone) TimeZone.getDefault().clone());
+
+    private TimestampParser() {}
+
+    static Date parse(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+        return new Date(parseMillis(buffer, 0, buffer.limit()));
+    }
+
+    /**
+     * Parse the timestamp stored between the given buffer positions (end exclusive).
+     */
+    static long parseMillis(ByteBuffer buffer, int start, int end) {
+        // year, month, day, hour, minute, second, millisecond, kept in locals so no array is allocated
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0, millisecond = 0;
+        int field = 0;
+        int value = 0;
+        boolean inDigits = false;
+
+        // one position past the end closes the last digit group
+        for (int i = start; i <= end; i++) {
+            byte b = (i < end) ? buffer.get(i) : (byte) ' ';
+            if (b >= '0' && b <= '9') {
+                if (!inDigits) {
+                    if (field == FIELD_COUNT) {
+                        throw invalid(buffer, start, end);
+                    }
+                    field++;
+                    value = 0;
+                    inDigits = true;
+                }
+                value = value * 10 + (b - '0');
+            } else if (inDigits) {
+                inDigits = false;
+                switch (field) {
+                    case 1: year = value; break;
+                    case 2: month = value; break;
+                    case 3: day = value; break;
+                    case 4: hour = value; break;
+                    case 5: minute = value; break;
+                    case 6: second = value; break;
+                    default: millisecond = value; break;
+                }
+            }
+        }
+        if (field < 3) {
+            throw invalid(buffer, start, end);
+        }
+
+        long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * 3600000L + minute * 60000L + second * 1000L + millisecond;
+        TimeZone timeZone = TIME_ZONE.get();
+        int offset = timeZone.getOffset(localMillis - timeZone.getRawOffset());
+        long millis = localMillis - offset;
+        int actualOffset = timeZone.getOffset(millis);
+        if (actualOffset != offset) {
+            // local time falls into a daylight saving gap, shift it forward as Calendar does
+            millis = localMillis - actualOffset;
+        }
+        return millis;
+    }
+
+    // days since 1970-01-01 of the proleptic Gregorian date, see http://howardhinnant.github.io/date_algorithms.html
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException invalid(ByteBuffer buffer, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            sb.append((char) buffer.get(i));
+        }
+        return new IllegalArgumentException("Unparseable date: \"" + sb + "\"");
+    }
+}
@@ -1,10 +1,11 @@
 package main.java;
 
-import com.datastax.driver.core.PreparedStatement;
-import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import main.java.StatementRegistry.Query;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -22,43 +23,75 @@ import java.util.ArrayList;
  */
 public class TopBalanceTransaction {
     /* popular items */
-    private PreparedStatement selectTopBalanceStmt;
-    private PreparedStatement selectCustomerNameStmt;
 
-    private Session session;
+    private static final int TOP_COUNT = 10;
 
-    private static final String SELECT_TOP_BALANCE =
-            "SELECT * "
+    private final StatementRegistry statements;
+    // (warehouse id, district id) of every district, read once as districts are never added after the load
+    private List<int[]> districts;
+
+    static final String SELECT_DISTRICTS =
+            "SELECT d_w_id, d_id "
+                    + "FROM districts;";
+    // the balances of a district are clustered in descending order, its top balances are the first rows
+    static final String SELECT_TOP_BALANCE =
+            "SELECT c_w_id, c_d_id, c_id, c_balance "
                     + "FROM customers_balances "
-                    + "LIMIT 10;";
-    private static final String SELECT_CUSTOMER_NAME =
+                    + "WHERE c_w_id = ? AND c_d_id = ? "
+                    + "LIMIT " + TOP_COUNT + ";";
+    static final String SELECT_CUSTOMER_NAME =
             "SELECT c_first, c_middle, c_last "
                     + "FROM customers "
                     + "WHERE c_w_id=? AND c_d_id=? AND c_id = ?;";
-    TopBalanceTransaction(Session session) {
-        this.session = session;
-        selectTopBalanceStmt = session.prepare(SELECT_TOP_BALANCE);
-        selectCustomerNameStmt = session.prepare(SELECT_CUSTOMER_NAME);
+    TopBalanceTransaction(StatementRegistry statements) {
+        this.statements = statements;
     }
 
     /* Start of public methods */
+
+    /**
+     * The top customers of every district are read concurrently, at most TOP_COUNT rows per district,
+     * and merged: a transaction reads 10 * TOP_COUNT rows per warehouse instead of every customer.
+     */
     void topBalance() {
-        ResultSet resultSet = session.execute(selectTopBalanceStmt.bind());
-        List<Row> topCustomers = resultSet.all();
-        List<Row> customerNames = new ArrayList();
+        List<ListenableFuture<List<Row>>> districtTops = new ArrayList<>();
+        for (int[] district : getDistricts()) {
+            districtTops.add(statements.readAsync(Query.TOP_BALANCE_SELECT_TOP_BALANCE, district[0], district[1]));
+        }
+        List<Row> topCustomers = new ArrayList<>();
+        for (List<Row> districtTop : Futures.getUnchecked(Futures.allAsList(districtTops))) {
+            topCustomers.addAll(districtTop);
+        }
+        topCustomers.sort(Comparator.comparing((Row row) -> row.getDecimal("c_balance")).reversed());
+        topCustomers = topCustomers.subList(0, Math.min(TOP_COUNT, topCustomers.size()));
+
+        List<ListenableFuture<List<Row>>> customerNames = new ArrayList<>();
         for(Row cus: topCustomers){
-            ResultSet customerName = session.execute(selectCustomerNameStmt.bind(cus.getInt("c_w_id"),
+            customerNames.add(statements.readAsync(Query.TOP_BALANCE_SELECT_CUSTOMER_NAME, cus.getInt("c_w_id"),
                     cus.getInt("c_d_id"), cus.getInt("c_id")));
-            Row cusN = (customerName.all()).get(0);
-            customerNames.add(cusN);
         }
-        outputTopBalance(topCustomers, customerNames);
+        List<Row> names = new ArrayList<>();
+        for (List<Row> name : Futures.getUnchecked(Futures.allAsList(customerNames))) {
+            names.add(name.get(0));
+        }
+        outputTopBalance(topCustomers, names);
     }
 
     /*  End of public methods */
 
+    private List<int[]> getDistricts() {
+        if (districts == null) {
+            List<int[]> ids = new ArrayList<>();
+            for (Row district : statements.stream(Query.TOP_BALANCE_SELECT_DISTRICTS)) {
+                ids.add(new int[] {district.getInt("d_w_id"), district.getInt("d_id")});
+            }
+            districts = ids;
+        }
+        return districts;
+    }
+
     private void outputTopBalance(List<Row> topCustomers, List<Row> customerNames){
-        for (int i=0; i<10; i++){
+        for (int i=0; i<topCustomers.size(); i++){
             Row cusName = customerNames.get(i);
             System.out.println("customer name: " + cusName.getString("c_first") + " "
                     + cusName.getString("c_middle") + " " + cusName.getString("c_last"));
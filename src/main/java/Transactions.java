@@ -1,10 +1,5 @@
 package main.java;
 
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.ConsistencyLevel;
-import com.datastax.driver.core.Session;
-import com.datastax.driver.core.QueryOptions;
-
 import java.util.List;
 
 /**
@@ -20,10 +15,12 @@ import java.util.List;
  * 7. Top-Balance Transaction identifies the top-10 customers with the highest outstanding payment balance.
  */
 class Transactions {
-    static final String[] CONTACT_POINTS = Setup.CONTACT_POINTS;
     static final String KEY_SPACE = Setup.KEY_SPACE;
+    // "sync" sends the requests of a transaction one after another,
+    // "async" sends independent requests of a transaction concurrently
+    private static final String TRANSACTION_MODE_KEY = "TRANSACTION_MODE";
+    static final boolean ASYNC = Setup.getConfig(TRANSACTION_MODE_KEY, "sync").equalsIgnoreCase("async");
 
-    private Session session;
     private OrderTransaction orderTransaction;
     private PaymentTransaction paymentTransaction;
     private DeliveryTransaction deliveryTransaction;
@@ -33,26 +30,24 @@ class Transactions {
     private TopBalanceTransaction topBalanceTransaction;
 
     Transactions(int index, String consistencyLevel) {
-        QueryOptions queryOptions;
-        if (consistencyLevel.equalsIgnoreCase("ONE")) {
-            queryOptions = new QueryOptions().setConsistencyLevel(ConsistencyLevel.ONE);
-        } else {
-            queryOptions = new QueryOptions().setConsistencyLevel(ConsistencyLevel.QUORUM);
-        }
+        this(index, consistencyLevel, null);
+    }
 
-        Cluster cluster = Cluster.builder()
-                .addContactPoint(CONTACT_POINTS[index % 5])
-                .withQueryOptions(queryOptions)
-                .build();
-        session = cluster.connect(KEY_SPACE);
+    /**
+     * @param cache : values of the warehouses only this instance runs transactions for,
+     *              null if other instances run transactions for the same warehouses
+     */
+    Transactions(int index, String consistencyLevel, WarehouseCache cache) {
+        // all clients share one session and its prepared statements
+        StatementRegistry statements = SharedSession.getStatements(consistencyLevel);
 
-        orderTransaction = new OrderTransaction(session);
-        paymentTransaction = new PaymentTransaction(session);
-        deliveryTransaction = new DeliveryTransaction(session);
-        orderStatusTransaction = new OrderStatusTransaction(session);
-        stockLevelTransaction = new StockLevelTransaction(session);
-        popularItemTransaction = new PopularItemTransaction(session) ;
-        topBalanceTransaction = new TopBalanceTransaction(session);
+        orderTransaction = new OrderTransaction(statements, cache);
+        paymentTransaction = new PaymentTransaction(statements, cache);
+        deliveryTransaction = new DeliveryTransaction(statements);
+        orderStatusTransaction = new OrderStatusTransaction(statements);
+        stockLevelTransaction = new StockLevelTransaction(statements);
+        popularItemTransaction = new PopularItemTransaction(statements);
+        topBalanceTransaction = new TopBalanceTransaction(statements);
     }
 
     /* Start of public methods */
@@ -70,11 +65,11 @@ class Transactions {
     }
 
     void processOrderStatus(int c_W_ID, int c_D_ID, int c_ID){
-        orderStatusTransaction.processOrderStatus(c_W_ID, c_D_ID, c_ID);
+        orderStatusTransaction.processOrderStatus(c_W_ID, c_D_ID, c_ID).print();
     }
 
     void processStockLevel(int w_ID, int d_ID, int T, int L){
-        stockLevelTransaction.processStockLevel(w_ID, d_ID, T, L);
+        stockLevelTransaction.processStockLevel(w_ID, d_ID, T, L).print();
     }
 
     void popularItem(int wId, int dId, int numOfOrders) {
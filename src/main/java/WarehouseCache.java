@@ -0,0 +1,50 @@
+package main.java;
+
+import com.datastax.driver.core.Row;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Warehouse and district values kept in memory by the worker owning the warehouses in a {@link WarehouseScheduler},
+ * so transactions stop reading values that never change or that only the owning worker writes:
+ * - taxes and addresses are never updated
+ * - next order ids and year-to-date amounts are only updated by the owning worker,
+ *   as long as no other client process runs transactions against the same key space.
+ * Not thread-safe, only the owning worker reads and updates it.
+ */
+class WarehouseCache {
+    private static final int DISTRICTS_PER_WAREHOUSE = 10;
+
+    static class Warehouse {
+        BigDecimal tax;
+        // address columns of the warehouse, its w_ytd column is only valid until the first payment, see ytd
+        Row address;
+        BigDecimal ytd;
+        private final District[] districts = new District[DISTRICTS_PER_WAREHOUSE + 1];
+    }
+
+    static class District {
+        BigDecimal tax;
+        // 0 until read
+        int nextOrderId;
+        // address columns of the district, its d_ytd column is only valid until the first payment, see ytd
+        Row address;
+        BigDecimal ytd;
+    }
+
+    private final Map<Integer, Warehouse> warehouses = new HashMap<>();
+
+    Warehouse getWarehouse(int wId) {
+        return warehouses.computeIfAbsent(wId, id -> new Warehouse());
+    }
+
+    District getDistrict(int wId, int dId) {
+        Warehouse warehouse = getWarehouse(wId);
+        if (warehouse.districts[dId] == null) {
+            warehouse.districts[dId] = new District();
+        }
+        return warehouse.districts[dId];
+    }
+}
@@ -0,0 +1,80 @@
+package main.java;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs every New-Order, Payment and Delivery transaction of a warehouse on the single worker thread owning it,
+ * warehouse w is owned by worker (w - 1) % SCHEDULER_WORKERS (default 64).
+ * Clients hand their transactions to the owning worker and wait for them, so every client still
+ * runs its transactions in order and measures them as before.
+ *
+ * As a warehouse has a single writer, its read-modify-write updates no longer race between clients,
+ * and every worker keeps the values of its warehouses in its own {@link WarehouseCache}, without any lock.
+ * Read-only transactions neither read nor write that state, clients run them themselves, in parallel with the workers.
+ * Requests are sent to a replica of their partition by the token-aware policy of {@link SharedSession}.
+ *
+ * Enabled with SCHEDULER=warehouse in config.env, by default every client runs its own transactions.
+ */
+class WarehouseScheduler {
+    private static final String SCHEDULER_KEY = "SCHEDULER";
+    private static final String SCHEDULER_WORKERS_KEY = "SCHEDULER_WORKERS";
+    private static final int DEFAULT_SCHEDULER_WORKERS = 64;
+
+    private static WarehouseScheduler scheduler;
+
+    private final ExecutorService[] workers;
+    private final Transactions[] transactions;
+
+    private WarehouseScheduler(String consistencyLevel, int workerCount) {
+        workers = new ExecutorService[workerCount];
+        transactions = new Transactions[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            final String name = "warehouse-worker-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            transactions[i] = new Transactions(i, consistencyLevel, new WarehouseCache());
+        }
+    }
+
+    /**
+     * @param consistencyLevel : "ONE" or "QUORUM", default consistency level of all requests
+     * @return the scheduler shared by all clients, or null if clients run their own transactions
+     */
+    static synchronized WarehouseScheduler get(String consistencyLevel) {
+        if (!Setup.getConfig(SCHEDULER_KEY, "client").equalsIgnoreCase("warehouse")) {
+            return null;
+        }
+        if (scheduler == null) {
+            scheduler = new WarehouseScheduler(consistencyLevel,
+                    Setup.getIntConfig(SCHEDULER_WORKERS_KEY, DEFAULT_SCHEDULER_WORKERS));
+        }
+        return scheduler;
+    }
+
+    /**
+     * Run the transaction on the worker owning the warehouse, waiting until it completes.
+     */
+    void execute(int wId, Consumer<Transactions> transaction) {
+        int worker = Math.floorMod(wId - 1, workers.length);
+        Future<?> future = workers[worker].submit(() -> transaction.accept(transactions[worker]));
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Transaction of warehouse " + wId + " failed with error : "
+                    + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Transaction of warehouse " + wId + " interrupted.", e);
+        }
+    }
+}
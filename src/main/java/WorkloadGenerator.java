@@ -0,0 +1,275 @@
+package main.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates xact files in the format read by {@link ClientThread}, one file per client,
+ * with a configurable transaction mix and distribution of warehouses the transactions target:
+ * - uniform: every warehouse is equally likely
+ * - zipf:<exponent>: warehouse k is chosen with probability proportional to 1 / k^exponent
+ * - hot:<fraction>:<count>: the given fraction of transactions go to warehouses 1 to count, the rest are uniform
+ * Districts are uniform, customers and items follow the TPC-C non-uniform random function.
+ *
+ * Clients are generated in parallel, each from a random generator seeded by the run seed and its index,
+ * so the files are identical for the same arguments.
+ *
+ * Usage: main.java.WorkloadGenerator [key=value ...], with keys
+ * clients, transactions (per client), warehouses, mix (e.g. N:40,P:40,D:4,O:4,S:4,I:4,T:4),
+ * distribution, seed and out (output folder).
+ */
+class WorkloadGenerator {
+    private static final int DISTRICTS_PER_WAREHOUSE = 10;
+    private static final int CUSTOMERS_PER_DISTRICT = 3000;
+    private static final int ITEM_COUNT = 100000;
+    private static final String TRANSACTION_TYPES = "NPDOSIT";
+    private static final String DEFAULT_MIX = "N:40,P:40,D:4,O:4,S:4,I:4,T:4";
+
+    private final int clientCount;
+    private final int transactionCount;
+    private final int warehouseCount;
+    private final long seed;
+    private final File outputDir;
+    // cumulative weight of every transaction type, in the order of TRANSACTION_TYPES
+    private final int[] mix = new int[TRANSACTION_TYPES.length()];
+    // cumulative probability of warehouses 1 to warehouseCount
+    private final double[] warehouseDistribution;
+    // run-time constants of the TPC-C non-uniform random function
+    private final int customerConstant;
+    private final int itemConstant;
+
+    private WorkloadGenerator(Map<String, String> args) {
+        clientCount = Integer.parseInt(getArg(args, "clients", "10"));
+        transactionCount = Integer.parseInt(getArg(args, "transactions", "20000"));
+        warehouseCount = Integer.parseInt(getArg(args, "warehouses", "8"));
+        seed = Long.parseLong(getArg(args, "seed", "4224"));
+        outputDir = new File(getArg(args, "out", "xact"));
+        if (clientCount <= 0 || transactionCount < 0 || warehouseCount <= 0) {
+            throw new IllegalArgumentException("clients and warehouses must be positive.");
+        }
+
+        int total = 0;
+        for (String weight : getArg(args, "mix", DEFAULT_MIX).split(",")) {
+            String[] typeAndWeight = weight.trim().split(":");
+            int type = TRANSACTION_TYPES.indexOf(typeAndWeight[0].trim().toUpperCase());
+            if (typeAndWeight.length != 2 || typeAndWeight[0].trim().length() != 1 || type < 0) {
+                throw new IllegalArgumentException("Invalid transaction mix : " + weight);
+            }
+            mix[type] += Integer.parseInt(typeAndWeight[1].trim());
+        }
+        for (int i = 0; i < mix.length; i++) {
+            total += mix[i];
+            mix[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Transaction mix must have a positive weight.");
+        }
+
+        warehouseDistribution = newDistribution(getArg(args, "distribution", "uniform"), warehouseCount);
+        SplittableRandom random = new SplittableRandom(seed);
+        customerConstant = random.nextInt(1024);
+        itemConstant = random.nextInt(8192);
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> argMap = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                System.out.println("Usage: main.java.WorkloadGenerator [clients=10] [transactions=20000] "
+                        + "[warehouses=8] [mix=" + DEFAULT_MIX + "] [distribution=uniform|zipf:<exponent>|"
+                        + "hot:<fraction>:<count>] [seed=4224] [out=xact]");
+                System.exit(1);
+            }
+            argMap.put(keyValue[0].trim(), keyValue[1].trim());
+        }
+
+        try {
+            new WorkloadGenerator(argMap).run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static String getArg(Map<String, String> args, String key, String defaultValue) {
+        String value = args.get(key);
+        return (value == null || value.isEmpty()) ? defaultValue : value;
+    }
+
+    private static double[] newDistribution(String distribution, int count) {
+        String[] parts = distribution.split(":");
+        double[] weights = new double[count];
+        switch (parts[0].toLowerCase()) {
+            case "uniform":
+                for (int i = 0; i < count; i++) {
+                    weights[i] = 1;
+                }
+                break;
+            case "zipf":
+                double exponent = (parts.length > 1) ? Double.parseDouble(parts[1]) : 1.0;
+                for (int i = 0; i < count; i++) {
+                    weights[i] = 1 / Math.pow(i + 1, exponent);
+                }
+                break;
+            case "hot":
+                double fraction = (parts.length > 1) ? Double.parseDouble(parts[1]) : 0.8;
+                int hotCount = Math.min(count, (parts.length > 2) ? Integer.parseInt(parts[2]) : 1);
+                for (int i = 0; i < count; i++) {
+                    weights[i] = (1 - fraction) / count + ((i < hotCount) ? fraction / hotCount : 0);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported distribution : " + distribution);
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double cumulative = 0;
+        for (int i = 0; i < count; i++) {
+            cumulative += weights[i] / total;
+            weights[i] = cumulative;
+        }
+        weights[count - 1] = 1;
+        return weights;
+    }
+
+    private void run() {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Create folder " + outputDir + " failed.");
+        }
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(clientCount, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= clientCount; i++) {
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    generateClient(index);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generate workload failed with error : " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generate workload interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        System.out.printf("Successfully generated %d transactions for each of %d clients into %s (%.1f sec) \n",
+                transactionCount, clientCount, outputDir, (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    private void generateClient(int index) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed * 31 + index);
+        StringBuilder sb = new StringBuilder();
+        File file = new File(outputDir, index + ".txt");
+
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            for (int i = 0; i < transactionCount; i++) {
+                sb.setLength(0);
+                appendTransaction(sb, random);
+                out.append(sb);
+            }
+        }
+    }
+
+    private void appendTransaction(StringBuilder sb, SplittableRandom random) {
+        int pick = random.nextInt(mix[mix.length - 1]);
+        int type = 0;
+        while (pick >= mix[type]) {
+            type++;
+        }
+
+        int w = nextWarehouse(random);
+        int d = random.nextInt(1, DISTRICTS_PER_WAREHOUSE + 1);
+        switch (TRANSACTION_TYPES.charAt(type)) {
+            case 'N':
+                int itemCount = random.nextInt(5, 16);
+                sb.append("N,").append(nextCustomer(random)).append(',').append(w).append(',').append(d)
+                        .append(',').append(itemCount).append('\n');
+                for (int i = 0; i < itemCount; i++) {
+                    int supplyWarehouse = w;
+                    // 1% of the items are supplied by another warehouse
+                    if (warehouseCount > 1 && random.nextInt(100) == 0) {
+                        supplyWarehouse = random.nextInt(1, warehouseCount);
+                        supplyWarehouse += (supplyWarehouse >= w) ? 1 : 0;
+                    }
+                    sb.append(nonUniformRandom(random, 8191, itemConstant, 1, ITEM_COUNT)).append(',')
+                            .append(supplyWarehouse).append(',').append(random.nextInt(1, 11)).append('\n');
+                }
+                break;
+            case 'P':
+                int cents = random.nextInt(100, 500001);
+                sb.append("P,").append(w).append(',').append(d).append(',').append(nextCustomer(random))
+                        .append(',').append(cents / 100).append('.').append(cents / 10 % 10).append(cents % 10)
+                        .append('\n');
+                break;
+            case 'D':
+                sb.append("D,").append(w).append(',').append(random.nextInt(1, 11)).append('\n');
+                break;
+            case 'O':
+                sb.append("O,").append(w).append(',').append(d).append(',').append(nextCustomer(random))
+                        .append('\n');
+                break;
+            case 'S':
+                sb.append("S,").append(w).append(',').append(d).append(',').append(random.nextInt(10, 21))
+                        .append(',').append(random.nextInt(10, 31)).append('\n');
+                break;
+            case 'I':
+                sb.append("I,").append(w).append(',').append(d).append(',').append(random.nextInt(10, 31))
+                        .append('\n');
+                break;
+            default:
+                sb.append("T\n");
+        }
+    }
+
+    private int nextWarehouse(SplittableRandom random) {
+        double pick = random.nextDouble();
+        int low = 0;
+        int high = warehouseDistribution.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (warehouseDistribution[mid] <= pick) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low + 1;
+    }
+
+    private int nextCustomer(SplittableRandom random) {
+        return nonUniformRandom(random, 1023, customerConstant, 1, CUSTOMERS_PER_DISTRICT);
+    }
+
+    private static int nonUniformRandom(SplittableRandom random, int a, int c, int x, int y) {
+        return (((random.nextInt(0, a + 1) | random.nextInt(x, y + 1)) + c) % (y - x + 1)) + x;
+    }
+}
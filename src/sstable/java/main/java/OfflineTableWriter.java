@@ -0,0 +1,97 @@
+package main.java;
+
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the rows of one table into SSTable files of a local folder with {@link CQLSSTableWriter},
+ * without connecting to any Cassandra node.
+ * The folder follows the layout expected by sstableloader: {@code <dir>/<keyspace>/<table>}.
+ * Only compiled when building with the sstable profile, see README.
+ */
+class OfflineTableWriter implements TableWriter {
+    private final String table;
+    private final File outputDir;
+    private final CQLSSTableWriter writer;
+    private final AtomicLong rowCount = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * @param schemaCmd : CREATE TABLE command of the table
+     * @param insertCmd : INSERT command binding the values passed to {@link #insert(Object...)}
+     * @param bufferSizeInMB : amount of rows buffered in memory before a SSTable is flushed
+     */
+    OfflineTableWriter(String table, String schemaCmd, String insertCmd, File outputDir, int bufferSizeInMB) {
+        this.table = table;
+        this.outputDir = outputDir;
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Create folder " + outputDir + " failed.");
+        }
+
+        // building writers registers the table in the static local schema, do it one at a time
+        synchronized (OfflineTableWriter.class) {
+            this.writer = CQLSSTableWriter.builder()
+                    .inDirectory(outputDir)
+                    .forTable(schemaCmd)
+                    .using(insertCmd)
+                    .withBufferSizeInMB(bufferSizeInMB)
+                    .build();
+        }
+    }
+
+    /**
+     * Insert one row. Null values are left unset so no tombstones are written.
+     */
+    @Override
+    public void insert(Object... values) {
+        Object[] row = values.clone();
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) {
+                row[i] = CQLSSTableWriter.UNSET_VALUE;
+            }
+        }
+
+        // CQLSSTableWriter is not thread-safe
+        synchronized (writer) {
+            try {
+                writer.addRow(row);
+            } catch (IOException e) {
+                throw new IllegalStateException("Write SSTable of table " + table + " failed with error : "
+                        + e.getMessage(), e);
+            }
+        }
+        rowCount.incrementAndGet();
+    }
+
+    /**
+     * Rows only become durable once the SSTables are completed in {@link #close()},
+     * a partially written table is rewritten from scratch.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (writer) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Write SSTable of table " + table + " failed with error : "
+                        + e.getMessage(), e);
+            }
+        }
+
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        System.out.printf("Successfully wrote %d rows for table : %s into %s (%.0f rows/sec) \n",
+                rowCount.get(), table, outputDir, rowCount.get() / seconds);
+    }
+}